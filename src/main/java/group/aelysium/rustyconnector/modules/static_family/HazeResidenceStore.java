@@ -0,0 +1,127 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.common.haze.HazeDatabase;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.DataHolder;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Filter;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Type;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.CreateRequest;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.ReadRequest;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.UpdateRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Stores residences in a Haze data holder.
+ * {@code last_joined} is written as an {@link Instant}, residences hold it as UTC.
+ */
+public class HazeResidenceStore implements ResidenceStore {
+    static final String RESIDENCE_TABLE = "staticFamily_residence";
+
+    protected final HazeDatabase database;
+
+    public HazeResidenceStore(@NotNull HazeDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Creates the residence table if it doesn't already exist.
+     */
+    public void prepare() throws Exception {
+        if(this.database.doesDataHolderExist(RESIDENCE_TABLE)) return;
+
+        DataHolder table = new DataHolder(RESIDENCE_TABLE);
+        table.addKey("player_uuid", Type.STRING(36).nullable(false));
+        table.addKey("server_id", Type.STRING(64).nullable(false));
+        table.addKey("family_id", Type.STRING(16).nullable(false));
+        table.addKey("last_joined", Type.DATETIME().nullable(false));
+        this.database.createDataHolder(table);
+    }
+
+    @Override
+    public @NotNull Optional<Residence> fetch(@NotNull UUID player, @NotNull String familyID) throws Exception {
+        ReadRequest query = this.database.newReadRequest(RESIDENCE_TABLE);
+        query.withFilter(
+            Filter
+                 .by("player_uuid", player, Filter.EQUALS)
+                .AND("family_id", familyID, Filter.EQUALS)
+        );
+
+        return query.execute(Residence.class).stream().findAny();
+    }
+
+    @Override
+    public @NotNull List<Residence> fetchAll(@NotNull Collection<UUID> players) throws Exception {
+        if(players.isEmpty()) return List.of();
+
+        ReadRequest query = this.database.newReadRequest(RESIDENCE_TABLE);
+        {
+            Filter filter = null;
+            for (UUID player : players)
+                filter = filter == null ? Filter.by("player_uuid", player, Filter.EQUALS) : filter.OR("player_uuid", player, Filter.EQUALS);
+            query.withFilter(filter);
+        }
+
+        return List.copyOf(query.execute(Residence.class));
+    }
+
+    @Override
+    public void create(@NotNull Residence residence) throws Exception {
+        CreateRequest query = this.database.newCreateRequest(RESIDENCE_TABLE);
+        query.parameter("player_uuid", residence.player_uuid());
+        query.parameter("server_id", residence.server_id());
+        query.parameter("family_id", residence.family_id());
+        query.parameter("last_joined", residence.last_joined().toInstant(ZoneOffset.UTC));
+
+        query.execute();
+    }
+
+    /**
+     * Haze doesn't support multi-row creates, so each residence is still its own request.
+     */
+    @Override
+    public void createAll(@NotNull Collection<Residence> residences) throws Exception {
+        for (Residence residence : residences) this.create(residence);
+    }
+
+    @Override
+    public void update(@NotNull Residence residence) throws Exception {
+        UpdateRequest query = this.database.newUpdateRequest(RESIDENCE_TABLE);
+
+        query.withFilter(
+            Filter
+                 .by("player_uuid", residence.player_uuid(), Filter.EQUALS)
+                .AND("family_id", residence.family_id(), Filter.EQUALS)
+        );
+
+        query.parameter("player_uuid", residence.player_uuid());
+        query.parameter("server_id", residence.server_id());
+        query.parameter("family_id", residence.family_id());
+        query.parameter("last_joined", residence.last_joined().toInstant(ZoneOffset.UTC));
+
+        query.execute();
+    }
+
+    @Override
+    public @NotNull List<Residence> page(@Nullable String familyID, @Nullable String serverID, int afterID, int limit) throws Exception {
+        ReadRequest query = this.database.newReadRequest(RESIDENCE_TABLE);
+        {
+            Filter filter = Filter.by("id", afterID, Filter.GREATER_THAN);
+            if(familyID != null) filter = filter.AND("family_id", familyID, Filter.EQUALS);
+            if(serverID != null) filter = filter.AND("server_id", serverID, Filter.EQUALS);
+            query.withFilter(filter);
+        }
+        query.orderBy("id", ReadRequest.Order.ASCENDING);
+        query.limit(limit);
+
+        // Keyset paging depends on this order, so don't trust the driver to have kept it.
+        return query.execute(Residence.class).stream().sorted(Comparator.comparingInt(Residence::id)).toList();
+    }
+}
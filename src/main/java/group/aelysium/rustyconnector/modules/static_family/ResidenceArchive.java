@@ -0,0 +1,232 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams residences between a residence store and a line-delimited archive file.
+ * Each line holds a single residence as {@code player_uuid	server_id	family_id	last_joined}.
+ * Archives ending in {@code .gz} are compressed.
+ * <br/>
+ * Reads are paged and imports are batched, so memory use stays constant regardless of how many residences are moved.
+ * Each import batch checks for existing residences with a single read before creating the new ones.
+ * Progress is recorded next to the archive in an {@code .export-progress} or {@code .import-progress} file after every page/batch,
+ * so an interrupted export or import will pick up from there the next time it's run against the same file with the same filters.
+ * Export progress also records how long the archive was at that point, and anything written after it is cut off before resuming.
+ * Resuming with different filters is refused, delete the progress file to start over instead.
+ * Compressed exports can't be appended to safely, so they always start over.
+ */
+public class ResidenceArchive {
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 250;
+    private static final String SEPARATOR = "\t";
+    private static final String EXPORT_PROGRESS = ".export-progress";
+    private static final String IMPORT_PROGRESS = ".import-progress";
+
+    protected final ResidenceStore store;
+    protected final int pageSize;
+    protected final int batchSize;
+
+    public ResidenceArchive(@NotNull ResidenceStore store, int pageSize, int batchSize) {
+        if(pageSize < 1) throw new IllegalArgumentException("pageSize must be at least 1.");
+        if(batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1.");
+        this.store = store;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+    }
+    public ResidenceArchive(@NotNull ResidenceStore store) {
+        this(store, DEFAULT_PAGE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Exports residences into the provided archive.
+     * @param archive The file to write to.
+     * @param familyID If set, only residences in this family are exported.
+     * @param serverID If set, only residences on this server are exported.
+     * @return The number of residences exported by this run.
+     */
+    public long exportTo(@NotNull Path archive, @Nullable String familyID, @Nullable String serverID) throws Exception {
+        Path progress = progressFile(archive, EXPORT_PROGRESS);
+        long[] checkpoint = readCheckpoint(progress, familyID, serverID, 2);
+        boolean resuming = checkpoint != null && Files.exists(archive) && !compressed(archive);
+        int lastID = 0;
+        if(resuming) {
+            lastID = (int) checkpoint[0];
+            truncate(archive, checkpoint[1]);
+        }
+
+        long exported = 0;
+        try (BufferedWriter writer = this.writer(archive, resuming)) {
+            while (true) {
+                List<Residence> page = this.store.page(familyID, serverID, lastID, this.pageSize);
+                if(page.isEmpty()) break;
+
+                for (Residence residence : page) {
+                    writer.write(encode(residence));
+                    writer.newLine();
+                    lastID = Math.max(lastID, residence.id());
+                }
+                writer.flush();
+                writeCheckpoint(progress, familyID, serverID, lastID, Files.size(archive));
+                exported += page.size();
+
+                if(page.size() < this.pageSize) break;
+            }
+        }
+
+        Files.deleteIfExists(progress);
+        return exported;
+    }
+
+    /**
+     * Imports residences from the provided archive.
+     * Residences for a player which already has one in the same family are skipped, so re-running an import is safe.
+     * @param archive The file to read from.
+     * @param familyID If set, only residences in this family are imported.
+     * @param serverID If set, only residences on this server are imported.
+     * @return The number of residences imported by this run.
+     */
+    public long importFrom(@NotNull Path archive, @Nullable String familyID, @Nullable String serverID) throws Exception {
+        Path progress = progressFile(archive, IMPORT_PROGRESS);
+        long[] checkpoint = readCheckpoint(progress, familyID, serverID, 1);
+        long committed = checkpoint == null ? 0 : checkpoint[0];
+
+        long imported = 0;
+        try (BufferedReader reader = this.reader(archive)) {
+            List<Residence> batch = new ArrayList<>(this.batchSize);
+            long line = 0;
+            String raw;
+            while ((raw = reader.readLine()) != null) {
+                line++;
+                if(line <= committed) continue;
+                if(raw.isBlank()) continue;
+
+                Residence residence = decode(raw);
+                if(familyID != null && !familyID.equals(residence.family_id())) continue;
+                if(serverID != null && !serverID.equals(residence.server_id())) continue;
+
+                batch.add(residence);
+                if(batch.size() < this.batchSize) continue;
+
+                imported += this.store(batch);
+                writeCheckpoint(progress, familyID, serverID, line);
+                batch.clear();
+            }
+            imported += this.store(batch);
+        }
+
+        Files.deleteIfExists(progress);
+        return imported;
+    }
+
+    /**
+     * Stores every residence in the batch whose player doesn't already have a residence in the same family.
+     * @return The number of residences stored.
+     */
+    private int store(@NotNull List<Residence> batch) throws Exception {
+        if(batch.isEmpty()) return 0;
+
+        Set<UUID> players = new HashSet<>();
+        batch.forEach(r -> players.add(r.player_uuid()));
+
+        Set<String> existing = new HashSet<>();
+        this.store.fetchAll(players).forEach(r -> existing.add(r.player_uuid() + "/" + r.family_id()));
+
+        List<Residence> created = new ArrayList<>();
+        for (Residence residence : batch)
+            if(existing.add(residence.player_uuid() + "/" + residence.family_id())) created.add(residence);
+
+        this.store.createAll(created);
+        return created.size();
+    }
+
+    private BufferedWriter writer(@NotNull Path archive, boolean append) throws IOException {
+        OutputStream stream = append ?
+                Files.newOutputStream(archive, StandardOpenOption.CREATE, StandardOpenOption.APPEND) :
+                Files.newOutputStream(archive, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if(compressed(archive)) stream = new GZIPOutputStream(stream, true);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    private BufferedReader reader(@NotNull Path archive) throws IOException {
+        InputStream stream = Files.newInputStream(archive);
+        if(compressed(archive)) stream = new GZIPInputStream(stream);
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    private static boolean compressed(@NotNull Path archive) {
+        return archive.getFileName().toString().endsWith(".gz");
+    }
+
+    private static Path progressFile(@NotNull Path archive, @NotNull String suffix) {
+        return archive.resolveSibling(archive.getFileName() + suffix);
+    }
+
+    /**
+     * Cuts off anything written to the archive after the provided length, such as rows from a page that was never checkpointed or a half-written line.
+     * @throws IllegalStateException If the archive is shorter than the provided length.
+     */
+    private static void truncate(@NotNull Path archive, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.WRITE)) {
+            if(channel.size() < length)
+                throw new IllegalStateException("The archive "+archive+" is shorter than its progress file says it should be. Delete the progress file to start over.");
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * Reads the positions stored in a progress file.
+     * @param positions The number of positions the progress file should hold.
+     * @return The stored positions, or null if there's no progress file.
+     * @throws IllegalStateException If the progress file was written with different filters.
+     */
+    private static @Nullable long[] readCheckpoint(@NotNull Path progress, @Nullable String familyID, @Nullable String serverID, int positions) throws IOException {
+        if(!Files.exists(progress)) return null;
+
+        String[] parts = Files.readString(progress).replaceAll("[\\r\\n]+$", "").split(SEPARATOR, -1);
+        if(parts.length != 2 + positions)
+            throw new IllegalStateException("The progress file "+progress+" is malformed. Delete it to start over.");
+        if(!parts[0].equals(Objects.toString(familyID, "")) || !parts[1].equals(Objects.toString(serverID, "")))
+            throw new IllegalStateException("The progress file "+progress+" was written with different filters (family: '"+parts[0]+"', server: '"+parts[1]+"'). Run again with the same filters, or delete it to start over.");
+
+        long[] values = new long[positions];
+        for (int i = 0; i < positions; i++) values[i] = Long.parseLong(parts[2 + i]);
+        return values;
+    }
+
+    private static void writeCheckpoint(@NotNull Path progress, @Nullable String familyID, @Nullable String serverID, long... positions) throws IOException {
+        StringBuilder checkpoint = new StringBuilder(Objects.toString(familyID, "") + SEPARATOR + Objects.toString(serverID, ""));
+        for (long position : positions) checkpoint.append(SEPARATOR).append(position);
+        Files.writeString(progress, checkpoint.toString());
+    }
+
+    protected static @NotNull String encode(@NotNull Residence residence) {
+        return residence.player_uuid() + SEPARATOR +
+               residence.server_id() + SEPARATOR +
+               residence.family_id() + SEPARATOR +
+               residence.last_joined();
+    }
+
+    protected static @NotNull Residence decode(@NotNull String line) {
+        String[] parts = line.split(SEPARATOR, -1);
+        if(parts.length != 4) throw new IllegalArgumentException("Malformed residence line: "+line);
+        return new Residence(
+                0,
+                UUID.fromString(parts[0]),
+                parts[1],
+                parts[2],
+                LocalDateTime.parse(parts[3])
+        );
+    }
+}
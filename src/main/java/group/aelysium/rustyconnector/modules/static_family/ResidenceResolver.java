@@ -0,0 +1,147 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Decides which server a player should be sent to when they join a static family.
+ * Lookups and assignments for the same player are serialized on this proxy, so concurrent joins through this proxy won't assign a player two residences.
+ * Other players are never blocked.
+ * <br/>
+ * This does not coordinate between proxies, the residence table has no unique constraint on player and family,
+ * so proxies sharing a database can still race each other on a player's first join.
+ */
+public class ResidenceResolver {
+    protected final String familyID;
+    protected final StaticFamily.StorageProtocol storageProtocol;
+    protected final StaticFamily.UnavailableProtocol unavailableProtocol;
+    protected final ResidenceStore store;
+    protected final ResidenceTelemetry telemetry;
+    private final Map<UUID, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public ResidenceResolver(
+            @NotNull String familyID,
+            @NotNull StaticFamily.StorageProtocol storageProtocol,
+            @NotNull StaticFamily.UnavailableProtocol unavailableProtocol,
+            @NotNull ResidenceStore store,
+            @NotNull ResidenceTelemetry telemetry
+    ) {
+        this.familyID = familyID;
+        this.storageProtocol = storageProtocol;
+        this.unavailableProtocol = unavailableProtocol;
+        this.store = store;
+        this.telemetry = telemetry;
+    }
+
+    public @NotNull ResidenceStore store() {
+        return this.store;
+    }
+
+    /**
+     * Resolves the residence of the player.
+     * @param player The player joining the family.
+     * @param serverExists Checks if a server with the provided id is currently in the family.
+     * @param availableServer Provides the id of the server a new residence should be assigned to.
+     * @throws java.util.NoSuchElementException If the player has no residence and either the storage protocol doesn't allow one to be assigned on join, or there's no available server.
+     */
+    public @NotNull Resolution resolve(@NotNull UUID player, @NotNull Predicate<String> serverExists, @NotNull Supplier<Optional<String>> availableServer) throws Exception {
+        return this.exclusively(player, () -> {
+            Optional<Residence> residence = this.store.fetch(player, this.familyID);
+            this.telemetry.recordJoin(player);
+
+            if(residence.isEmpty() && this.storageProtocol == StaticFamily.StorageProtocol.ON_FIRST_JOIN) {
+                String serverID = availableServer.get().orElseThrow();
+                this.store.create(new Residence(0, player, serverID, this.familyID, LocalDateTime.now(ZoneOffset.UTC)));
+                this.telemetry.recordResidenceAssigned(serverID);
+
+                return new Resolution(serverID, Resolution.Status.ASSIGNED);
+            }
+
+            String serverID = residence.orElseThrow().server_id();
+            if(serverExists.test(serverID)) return new Resolution(serverID, Resolution.Status.RESIDENT);
+
+            this.telemetry.recordFallback(this.unavailableProtocol);
+            return new Resolution(serverID, Resolution.Status.UNAVAILABLE);
+        });
+    }
+
+    /**
+     * Moves the player's residence to a new server.
+     */
+    public void reassign(@NotNull UUID player, @NotNull String previousServerID, @NotNull String serverID) throws Exception {
+        this.exclusively(player, () -> {
+            this.store.update(new Residence(0, player, serverID, this.familyID, LocalDateTime.now(ZoneOffset.UTC)));
+            this.telemetry.recordResidenceMoved(previousServerID, serverID);
+            return null;
+        });
+    }
+
+    /**
+     * Tries connecting a player to the load balancer's current server, moving on to the next server after each failed attempt.
+     * @param attempts The maximum number of servers to try.
+     * @param current Provides the load balancer's current server.
+     * @param connect Connects the player to the server. Returns the server the player ended up on, or null if they couldn't be connected.
+     * @param iterate Moves the load balancer on to its next server.
+     * @return The server the player was connected to. Empty if the load balancer ran out of servers or every attempt failed.
+     */
+    public static <S> @NotNull Optional<S> fallback(int attempts, @NotNull Supplier<Optional<S>> current, @NotNull Connector<S> connect, @NotNull Runnable iterate) {
+        for (int i = 1; i <= attempts; i++) {
+            S server = current.get().orElse(null);
+            if(server == null) return Optional.empty();
+
+            try {
+                S connected = connect.connect(server);
+                if(connected != null) return Optional.of(connected);
+            } catch (Exception ignore) {}
+
+            iterate.run();
+        }
+        return Optional.empty();
+    }
+
+    @FunctionalInterface
+    public interface Connector<S> {
+        @Nullable S connect(@NotNull S server) throws Exception;
+    }
+
+    /**
+     * Runs the action once no other action for the same player is running on this proxy.
+     */
+    private <T> T exclusively(@NotNull UUID player, @NotNull Callable<T> action) throws Exception {
+        CompletableFuture<Void> claim = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Void> other = this.inFlight.putIfAbsent(player, claim);
+            if(other == null) break;
+            other.join();
+        }
+
+        try {
+            return action.call();
+        } finally {
+            this.inFlight.remove(player, claim);
+            claim.complete(null);
+        }
+    }
+
+    /**
+     * @param serverID The player's residence. If the status is {@link Status#UNAVAILABLE} this server isn't in the family anymore.
+     */
+    public record Resolution(@NotNull String serverID, @NotNull Status status) {
+        public enum Status {
+            ASSIGNED,
+            RESIDENT,
+            UNAVAILABLE
+        }
+    }
+}
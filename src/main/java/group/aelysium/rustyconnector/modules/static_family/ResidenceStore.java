@@ -0,0 +1,49 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Persistent storage for player residences.
+ * Residences are unique per player per family, it's up to the caller to make sure that a residence doesn't already exist before creating one.
+ */
+public interface ResidenceStore {
+    /**
+     * Fetches the residence of the player in the family.
+     */
+    @NotNull Optional<Residence> fetch(@NotNull UUID player, @NotNull String familyID) throws Exception;
+
+    /**
+     * Fetches the residences of all the provided players, across every family.
+     */
+    @NotNull List<Residence> fetchAll(@NotNull Collection<UUID> players) throws Exception;
+
+    /**
+     * Stores a new residence. The id of the provided residence is ignored.
+     */
+    void create(@NotNull Residence residence) throws Exception;
+
+    /**
+     * Stores several new residences. The ids of the provided residences are ignored.
+     */
+    void createAll(@NotNull Collection<Residence> residences) throws Exception;
+
+    /**
+     * Updates the server and last joined time of the residence matching the player and family of the provided residence.
+     */
+    void update(@NotNull Residence residence) throws Exception;
+
+    /**
+     * Fetches a page of residences, in ascending order of their id.
+     * @param familyID If set, only residences in this family are returned.
+     * @param serverID If set, only residences on this server are returned.
+     * @param afterID Only residences with an id greater than this are returned.
+     * @param limit The maximum number of residences to return.
+     */
+    @NotNull List<Residence> page(@Nullable String familyID, @Nullable String serverID, int afterID, int limit) throws Exception;
+}
@@ -0,0 +1,320 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.RC;
+import group.aelysium.rustyconnector.common.errors.Error;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how residences in a static family are used.
+ * Joins are sampled per player at {@link #sampleRate()}, so every join of a sampled player is recorded. Fallbacks and residence churn are always counted.
+ * <br/>
+ * Rejoin intervals are measured between a player's joins as seen by this proxy, not from the residence's {@code last_joined},
+ * which is only written when a residence is created or moved.
+ * <br/>
+ * Memory use is fixed: joins are counted by a count-min sketch and only the top {@link #TOP_PLAYERS} reconnecting players are remembered,
+ * rejoin intervals are bucketed, and at most {@link #MAX_SERVERS} servers are tracked for churn.
+ * Every sampled join is counted, so rejoin counts are never under-estimated,
+ * but collisions in the sketch can over-estimate them by up to about one in every 3000 sampled joins.
+ * <br/>
+ * Last-seen times are kept in a table of {@link #LAST_SEEN_SLOTS} slots where colliding players replace each other,
+ * so the rejoin interval histogram is a sample rather than a full count.
+ * An interval is only measured if the player's slot wasn't taken over by another sampled player in between,
+ * which makes long intervals less likely to be measured than short ones once the number of sampled players approaches the size of the table.
+ * How often that happened is reported as {@link #lastSeenEvictions()}, lower the sample rate if it's a large share of joins.
+ */
+public class ResidenceTelemetry implements AutoCloseable {
+    public static final int TOP_PLAYERS = 10;
+    public static final int MAX_SERVERS = 1024;
+    public static final int LAST_SEEN_SLOTS = 65536;
+    private static final int LAST_SEEN_TIME_BITS = 40;
+    private static final long LAST_SEEN_TIME_MASK = (1L << LAST_SEEN_TIME_BITS) - 1;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 8192;
+    private static final long[] SKETCH_SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+
+    private static final Duration[] INTERVAL_BOUNDS = {
+            Duration.ofMinutes(1),
+            Duration.ofMinutes(10),
+            Duration.ofHours(1),
+            Duration.ofHours(6),
+            Duration.ofDays(1),
+            Duration.ofDays(7),
+            Duration.ofDays(30)
+    };
+    private static final String[] INTERVAL_LABELS = { "< 1m", "< 10m", "< 1h", "< 6h", "< 1d", "< 7d", "< 30d", ">= 30d" };
+
+    protected final String familyID;
+    protected final double sampleRate;
+    protected final @Nullable Path dumpFile;
+    protected final @Nullable ScheduledExecutorService executor;
+
+    private final LongAdder[] rejoinIntervals = new LongAdder[INTERVAL_LABELS.length];
+    private final Map<StaticFamily.UnavailableProtocol, LongAdder> fallbacks = new EnumMap<>(StaticFamily.UnavailableProtocol.class);
+    private final Map<String, Churn> churn = new ConcurrentHashMap<>();
+    private final AtomicLongArray sketch = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+    private final AtomicLongArray lastSeen = new AtomicLongArray(LAST_SEEN_SLOTS);
+    private final LongAdder lastSeenEvictions = new LongAdder();
+    private final Map<UUID, Long> topPlayers = new HashMap<>();
+
+    /**
+     * @param familyID The family being recorded.
+     * @param sampleRate The fraction of players whose joins are recorded, between 0 and 1. Setting this to 0 disables join sampling.
+     * @param dumpFile The file to periodically write a report to. If null, reports are never written.
+     * @param dumpInterval The number of seconds between reports.
+     */
+    public ResidenceTelemetry(@NotNull String familyID, double sampleRate, @Nullable Path dumpFile, int dumpInterval) {
+        this.familyID = familyID;
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        this.dumpFile = dumpFile;
+
+        for (int i = 0; i < this.rejoinIntervals.length; i++) this.rejoinIntervals[i] = new LongAdder();
+        for (StaticFamily.UnavailableProtocol protocol : StaticFamily.UnavailableProtocol.values()) this.fallbacks.put(protocol, new LongAdder());
+
+        if(dumpFile == null || dumpInterval <= 0) {
+            this.executor = null;
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StaticFamily-Telemetry-"+familyID);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleAtFixedRate(this::dumpQuietly, dumpInterval, dumpInterval, TimeUnit.SECONDS);
+    }
+
+    public double sampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Records that a player joined the family.
+     */
+    public void recordJoin(@NotNull UUID player) {
+        this.recordJoin(player, System.currentTimeMillis());
+    }
+
+    void recordJoin(@NotNull UUID player, long epochMillis) {
+        if(!this.sampled(player)) return;
+
+        long joins = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++)
+            joins = Math.min(joins, this.sketch.incrementAndGet(row * SKETCH_WIDTH + column(player, row)));
+
+        this.recordInterval(player, epochMillis);
+        if(joins > 1) this.rank(player, joins - 1);
+    }
+
+    private void recordInterval(@NotNull UUID player, long epochMillis) {
+        // Each slot packs a fingerprint of the player into the top bits and the epoch second they were last seen into the rest.
+        long hash = mix(player, 0x2545F4914F6CDD1DL);
+        int slot = (int) Math.floorMod(hash, (long) LAST_SEEN_SLOTS);
+        long fingerprint = (hash >>> LAST_SEEN_TIME_BITS) | 1;
+        long now = epochMillis / 1000;
+        long previous = this.lastSeen.getAndSet(slot, (fingerprint << LAST_SEEN_TIME_BITS) | (now & LAST_SEEN_TIME_MASK));
+        if(previous == 0) return;
+        if(previous >>> LAST_SEEN_TIME_BITS != fingerprint) {
+            this.lastSeenEvictions.increment();
+            return;
+        }
+
+        Duration interval = Duration.ofSeconds(Math.max(0, now - (previous & LAST_SEEN_TIME_MASK)));
+        int bucket = 0;
+        while (bucket < INTERVAL_BOUNDS.length && interval.compareTo(INTERVAL_BOUNDS[bucket]) >= 0) bucket++;
+        this.rejoinIntervals[bucket].increment();
+    }
+
+    private void rank(@NotNull UUID player, long estimate) {
+        synchronized (this.topPlayers) {
+            if(this.topPlayers.containsKey(player) || this.topPlayers.size() < TOP_PLAYERS) {
+                this.topPlayers.put(player, estimate);
+                return;
+            }
+            Map.Entry<UUID, Long> lowest = Collections.min(this.topPlayers.entrySet(), Map.Entry.comparingByValue());
+            if(lowest.getValue() >= estimate) return;
+            this.topPlayers.remove(lowest.getKey());
+            this.topPlayers.put(player, estimate);
+        }
+    }
+
+    private boolean sampled(@NotNull UUID player) {
+        if(this.sampleRate <= 0) return false;
+        if(this.sampleRate >= 1) return true;
+        return (mix(player, 0x632BE59BD9B4E019L) >>> 11) * 0x1.0p-53 < this.sampleRate;
+    }
+
+    /**
+     * Records that a player couldn't be connected to their residence, and the unavailable protocol had to be used.
+     */
+    public void recordFallback(@NotNull StaticFamily.UnavailableProtocol protocol) {
+        this.fallbacks.get(protocol).increment();
+    }
+
+    /**
+     * Records that a server became the residence of a player.
+     */
+    public void recordResidenceAssigned(@NotNull String serverID) {
+        Churn churn = this.churn(serverID);
+        if(churn != null) churn.arrivals().increment();
+    }
+
+    /**
+     * Records that a player's residence was moved from one server to another.
+     */
+    public void recordResidenceMoved(@NotNull String fromServerID, @NotNull String toServerID) {
+        Churn from = this.churn(fromServerID);
+        if(from != null) from.departures().increment();
+        this.recordResidenceAssigned(toServerID);
+    }
+
+    /**
+     * @return The number of sampled rejoins that fell into each interval bucket, in ascending order.
+     */
+    public @NotNull Map<String, Long> rejoinIntervals() {
+        Map<String, Long> intervals = new LinkedHashMap<>();
+        for (int i = 0; i < INTERVAL_LABELS.length; i++) intervals.put(INTERVAL_LABELS[i], this.rejoinIntervals[i].sum());
+        return intervals;
+    }
+
+    /**
+     * @return The number of sampled joins whose last-seen slot had been taken over by another player, so their rejoin interval couldn't be measured.
+     *         This includes first joins which landed on another player's slot.
+     */
+    public long lastSeenEvictions() {
+        return this.lastSeenEvictions.sum();
+    }
+
+    /**
+     * @return The number of times each unavailable protocol was used.
+     */
+    public @NotNull Map<StaticFamily.UnavailableProtocol, Long> fallbacks() {
+        Map<StaticFamily.UnavailableProtocol, Long> fallbacks = new EnumMap<>(StaticFamily.UnavailableProtocol.class);
+        this.fallbacks.forEach((k, v) -> fallbacks.put(k, v.sum()));
+        return fallbacks;
+    }
+
+    /**
+     * @return The number of residences which were assigned to, and moved away from, each server.
+     */
+    public @NotNull Map<String, ServerChurn> serverChurn() {
+        Map<String, ServerChurn> churn = new TreeMap<>();
+        this.churn.forEach((k, v) -> churn.put(k, new ServerChurn(v.arrivals().sum(), v.departures().sum())));
+        return churn;
+    }
+
+    /**
+     * @return The sampled players who have rejoined most frequently, in descending order of their estimated rejoins.
+     */
+    public @NotNull List<Map.Entry<UUID, Long>> topReconnectingPlayers() {
+        List<Map.Entry<UUID, Long>> players;
+        synchronized (this.topPlayers) {
+            players = new ArrayList<>(this.topPlayers.size());
+            this.topPlayers.forEach((k, v) -> players.add(Map.entry(k, v)));
+        }
+        players.sort(Map.Entry.<UUID, Long>comparingByValue().reversed());
+        return players;
+    }
+
+    /**
+     * @return The estimated number of rejoins for the player, if they're sampled. This may over-estimate, but will never under-estimate.
+     */
+    public long estimateRejoins(@NotNull UUID player) {
+        long joins = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++)
+            joins = Math.min(joins, this.sketch.get(row * SKETCH_WIDTH + column(player, row)));
+        return Math.max(0, joins - 1);
+    }
+
+    /**
+     * Writes a report of everything recorded so far.
+     */
+    public void dump(@NotNull Path file) throws Exception {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write("family: "+this.familyID+"\n");
+            writer.write("generated: "+Instant.now()+"\n");
+            writer.write("sample-rate: "+this.sampleRate+"\n");
+
+            writer.write("\nrejoin-intervals:\n");
+            for (Map.Entry<String, Long> entry : this.rejoinIntervals().entrySet())
+                writer.write("  "+entry.getKey()+": "+entry.getValue()+"\n");
+            writer.write("last-seen-evictions: "+this.lastSeenEvictions()+"\n");
+
+            writer.write("\nfallbacks:\n");
+            for (Map.Entry<StaticFamily.UnavailableProtocol, Long> entry : this.fallbacks().entrySet())
+                writer.write("  "+entry.getKey()+": "+entry.getValue()+"\n");
+
+            writer.write("\nserver-churn:\n");
+            for (Map.Entry<String, ServerChurn> entry : this.serverChurn().entrySet())
+                writer.write("  "+entry.getKey()+": +"+entry.getValue().arrivals()+" -"+entry.getValue().departures()+"\n");
+
+            writer.write("\ntop-reconnecting-players:\n");
+            for (Map.Entry<UUID, Long> entry : this.topReconnectingPlayers())
+                writer.write("  "+entry.getKey()+": "+entry.getValue()+"\n");
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void dumpQuietly() {
+        if(this.dumpFile == null) return;
+        try {
+            this.dump(this.dumpFile);
+        } catch (Exception e) {
+            RC.Error(Error.from(e).whileAttempting("To write the residence telemetry report.").detail("Family", this.familyID));
+        }
+    }
+
+    private @Nullable Churn churn(@NotNull String serverID) {
+        Churn churn = this.churn.get(serverID);
+        if(churn != null) return churn;
+        if(this.churn.size() >= MAX_SERVERS) return null;
+        return this.churn.computeIfAbsent(serverID, k -> new Churn(new LongAdder(), new LongAdder()));
+    }
+
+    private static int column(@NotNull UUID player, int row) {
+        return (int) Math.floorMod(mix(player, SKETCH_SEEDS[row]), (long) SKETCH_WIDTH);
+    }
+
+    private static long mix(@NotNull UUID player, long seed) {
+        long hash = (player.getMostSignificantBits() ^ Long.rotateLeft(player.getLeastSignificantBits(), 17)) * seed;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Stops the scheduled reports and writes a final one.
+     * A report that's already being written is allowed to finish first, so the two never write to the same temporary file.
+     */
+    @Override
+    public void close() {
+        if(this.executor == null) return;
+        this.executor.shutdown();
+        try {
+            if(!this.executor.awaitTermination(30, TimeUnit.SECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        this.dumpQuietly();
+    }
+
+    public record ServerChurn(long arrivals, long departures) {}
+    private record Churn(@NotNull LongAdder arrivals, @NotNull LongAdder departures) {}
+}
@@ -11,19 +11,15 @@ import group.aelysium.rustyconnector.proxy.player.Player;
 import group.aelysium.rustyconnector.proxy.util.AddressUtil;
 import group.aelysium.rustyconnector.proxy.util.LiquidTimestamp;
 import group.aelysium.rustyconnector.shaded.group.aelysium.ara.Flux;
-import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.DataHolder;
-import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Filter;
-import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Filterable;
-import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Type;
-import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.*;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.JoinConfiguration;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.time.Instant;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -34,13 +30,18 @@ import static net.kyori.adventure.text.JoinConfiguration.newlines;
 import static net.kyori.adventure.text.format.NamedTextColor.*;
 
 public class StaticFamily extends Family {
-    private static final String RESIDENCE_TABLE = "staticFamily_residence";
+    public static final int DETAILS_PAGE_SIZE = 20;
+    private static final long DETAILS_CACHE_MILLIS = 3000;
+    private static final int DETAILS_CACHE_ENTRIES = 32;
 
     protected final LiquidTimestamp residenceExpiration;
     protected final UnavailableProtocol unavailableProtocol;
     protected final StorageProtocol storageProtocol;
     protected final String databaseName;
-    protected final Flux<HazeDatabase> database;
+    protected final ResidenceTelemetry telemetry;
+    protected final ResidenceResolver residences;
+    private final Map<String, CachedDetails> detailsCache = new ConcurrentHashMap<>();
+    private final AtomicLong detailsGeneration = new AtomicLong(0);
 
     public StaticFamily(
             @NotNull String id,
@@ -51,27 +52,51 @@ public class StaticFamily extends Family {
             @NotNull LiquidTimestamp residenceExpiration,
             @NotNull UnavailableProtocol unavailableProtocol,
             @NotNull StorageProtocol storageProtocol,
-            @NotNull String database
+            @NotNull String database,
+            double telemetrySampleRate,
+            @Nullable Path telemetryFile,
+            int telemetryDumpInterval
+    ) throws Exception {
+        this(id, displayName, parent, metadata, loadBalancer, residenceExpiration, unavailableProtocol, storageProtocol, database, fetchDatabase(database), telemetrySampleRate, telemetryFile, telemetryDumpInterval);
+    }
+
+    /**
+     * Creates a static family on a database which has already been fetched from the haze provider.
+     */
+    StaticFamily(
+            @NotNull String id,
+            @Nullable String displayName,
+            @Nullable String parent,
+            @NotNull Map<String, Object> metadata,
+            @NotNull Module.Builder<LoadBalancer> loadBalancer,
+            @NotNull LiquidTimestamp residenceExpiration,
+            @NotNull UnavailableProtocol unavailableProtocol,
+            @NotNull StorageProtocol storageProtocol,
+            @NotNull String databaseName,
+            @NotNull HazeDatabase database,
+            double telemetrySampleRate,
+            @Nullable Path telemetryFile,
+            int telemetryDumpInterval
     ) throws Exception {
         super(id, displayName, parent, metadata);
         this.registerModule(loadBalancer);
         this.unavailableProtocol = unavailableProtocol;
         this.residenceExpiration = residenceExpiration;
         this.storageProtocol = storageProtocol;
-        this.databaseName = database;
+        this.databaseName = databaseName;
 
-        this.database = RC.P.Haze().fetchDatabase(this.databaseName);
-        if(this.database == null) throw new NoSuchElementException("No database exists on the haze provider with the name '"+this.databaseName+"'.");
-        
-        HazeDatabase db = this.database.get(15, TimeUnit.SECONDS);
-        if(db.doesDataHolderExist(RESIDENCE_TABLE)) return;
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        store.prepare();
+
+        // Telemetry starts its report thread right away, so only create it once nothing else here can fail.
+        this.telemetry = new ResidenceTelemetry(id, telemetrySampleRate, telemetryFile, telemetryDumpInterval);
+        this.residences = new ResidenceResolver(id, storageProtocol, unavailableProtocol, store, this.telemetry);
+    }
 
-        DataHolder table = new DataHolder(RESIDENCE_TABLE);
-        table.addKey("player_uuid", Type.STRING(36).nullable(false));
-        table.addKey("server_id", Type.STRING(64).nullable(false));
-        table.addKey("family_id", Type.STRING(16).nullable(false));
-        table.addKey("last_joined", Type.DATETIME().nullable(false));
-        db.createDataHolder(table);
+    private static @NotNull HazeDatabase fetchDatabase(@NotNull String name) throws Exception {
+        Flux<HazeDatabase> database = RC.P.Haze().fetchDatabase(name);
+        if(database == null) throw new NoSuchElementException("No database exists on the haze provider with the name '"+name+"'.");
+        return database.get(15, TimeUnit.SECONDS);
     }
 
     public @NotNull UnavailableProtocol unavailableProtocol() {
@@ -87,7 +112,19 @@ public class StaticFamily extends Family {
     }
 
     public @NotNull Flux<? extends HazeDatabase> database() {
-        return this.database;
+        return RC.P.Haze().fetchDatabase(this.databaseName);
+    }
+
+    public @NotNull ResidenceTelemetry telemetry() {
+        return this.telemetry;
+    }
+
+    /**
+     * Returns an archive which can export or import this family's residences.
+     * Exports and imports block until they finish, so they should be run off of the proxy's main thread.
+     */
+    public @NotNull ResidenceArchive residenceArchive() throws Exception {
+        return new ResidenceArchive(this.residences.store());
     }
 
     public Flux<? extends LoadBalancer> loadBalancer() {
@@ -96,10 +133,12 @@ public class StaticFamily extends Family {
 
     public void addServer(@NotNull Server server) {
         this.loadBalancer().ifPresent(l -> l.addServer(server));
+        this.invalidateDetails();
     }
 
     public void removeServer(@NotNull Server server) {
         this.loadBalancer().ifPresent(l -> l.removeServer(server));
+        this.invalidateDetails();
     }
 
     @Override
@@ -119,11 +158,13 @@ public class StaticFamily extends Family {
     @Override
     public void lockServer(@NotNull Server server) {
         this.loadBalancer().ifPresent(l -> l.lockServer(server));
+        this.invalidateDetails();
     }
 
     @Override
     public void unlockServer(@NotNull Server server) {
         this.loadBalancer().ifPresent(l -> l.unlockServer(server));
+        this.invalidateDetails();
     }
 
     @Override
@@ -187,38 +228,15 @@ public class StaticFamily extends Family {
         } catch (Exception ignore) {}
 
         try {
-            HazeDatabase db = this.database.get(15, TimeUnit.SECONDS);
-            Set<Residence> response;
-            {
-                ReadRequest query = db.newReadRequest(RESIDENCE_TABLE);
-                query.withFilter(
-                    Filter
-                         .by("player_uuid", player.id(), Filter.EQUALS)
-                        .AND("family_id", this.id(), Filter.EQUALS)
-                );
-                
-                response = new HashSet<>(query.execute(Residence.class));
-            }
-
-            if(response.isEmpty() && this.storageProtocol == StorageProtocol.ON_FIRST_JOIN) {
-                Server server = this.availableServer().orElseThrow();
-                {
-                    CreateRequest query = db.newCreateRequest(RESIDENCE_TABLE);
-                    query.parameter("player_uuid", player.id());
-                    query.parameter("server_id", server.id());
-                    query.parameter("family_id", this.id());
-                    query.parameter("last_joined", Instant.now());
-                    
-                    query.execute();
-                }
-
-                return server.connect(player, power);
-            }
+            ResidenceResolver.Resolution residence = this.residences.resolve(
+                player.id(),
+                this::containsServer,
+                () -> this.availableServer().map(Server::id)
+            );
 
-            Residence residence = response.stream().findAny().orElseThrow();
             LoadBalancer loadBalancer = this.loadBalancer().get(3, TimeUnit.SECONDS);
-            if(this.containsServer(residence.server_id())) {
-                Server server = loadBalancer.fetchServer(residence.server_id()).orElseThrow();
+            if(residence.status() != ResidenceResolver.Resolution.Status.UNAVAILABLE) {
+                Server server = loadBalancer.fetchServer(residence.serverID()).orElseThrow();
                 
                 return server.connect(player, power);
             }
@@ -226,51 +244,24 @@ public class StaticFamily extends Family {
             if(this.unavailableProtocol == UnavailableProtocol.CANCEL_CONNECTION_ATTEMPT)
                 return Player.Connection.Request.failedRequest(player, "Unable to connect you to your server. Please try again later.");
             
-            int remainingAttempts = loadBalancer.attempts();
             if(loadBalancer.unlockedServers().isEmpty())
                 return Player.Connection.Request.failedRequest(player, Component.text("There are no available servers to connect you to! Try again later."));
             
-            Player.Connection.Result connection = null;
-            for (int i = 1; i <= remainingAttempts; i++) {
-                Server current = loadBalancer.current().orElse(null);
-                
-                if(current == null)
-                    return Player.Connection.Request.failedRequest(player, Component.text("There are no available servers to connect you to! Try again later."));
-                
-                Player.Connection.Request attempt = current.connect(player);
-                try {
-                    connection = attempt.result().get(10, TimeUnit.SECONDS);
-                    if (connection.connected()) break;
-                } catch (Exception ignore) {}
-                
-                loadBalancer.forceIterate();
-            }
-            if(connection == null)
-                return Player.Connection.Request.failedRequest(player, Component.text("There are no available servers to connect you to! Try again later."));
-            if(!connection.connected())
-                return Player.Connection.Request.failedRequest(player, Component.text("There are no available servers to connect you to! Try again later."));
-            if(connection.server() == null)
+            Server connected = ResidenceResolver.fallback(
+                loadBalancer.attempts(),
+                loadBalancer::current,
+                s -> {
+                    Player.Connection.Result result = s.connect(player).result().get(10, TimeUnit.SECONDS);
+                    return result.connected() ? result.server() : null;
+                },
+                loadBalancer::forceIterate
+            ).orElse(null);
+            if(connected == null)
                 return Player.Connection.Request.failedRequest(player, Component.text("There are no available servers to connect you to! Try again later."));
             
             if(this.unavailableProtocol == UnavailableProtocol.ASSIGN_NEW_RESIDENCE) {
 //                if(this.storageProtocol != StorageProtocol.ON_FIRST_JOIN) break;
-
-                {
-                    UpdateRequest query = db.newUpdateRequest(RESIDENCE_TABLE);
-                    
-                    query.withFilter(
-                        Filter
-                             .by("player_uuid", player.id(), Filter.EQUALS)
-                            .AND("family_id", this.id(), Filter.EQUALS)
-                    );
-
-                    query.parameter("player_uuid", player.id());
-                    query.parameter("server_id", connection.server().id());
-                    query.parameter("family_id", this.id());
-                    query.parameter("last_joined", Instant.now());
-                    
-                    query.execute();
-                }
+                this.residences.reassign(player.id(), residence.serverID(), connected.id());
             }
             if(this.unavailableProtocol == UnavailableProtocol.CONNECT_WITH_ERROR) {
                 player.message(Component.text("The server you were supposed to connect to is unavailable. So we connected you to another server instead.", NamedTextColor.GRAY));
@@ -292,8 +283,52 @@ public class StaticFamily extends Family {
         return this.connect(player, Player.Connection.Power.MINIMAL);
     }
 
+    /**
+     * Renders the details of this family, listing every one of its servers.
+     * Rendered details are cached for a short while, and are invalidated any time a server is added, removed, locked, or unlocked.
+     */
     @Override
     public @Nullable Component details() {
+        return this.cachedDetails(0, null);
+    }
+
+    /**
+     * Renders the details of this family, only listing a single page of its servers.
+     * Rendered details are cached the same way as {@link #details()}.
+     * @param page The page of servers to show, starting at 1.
+     * @param filter If set, only servers whose id or display name contains this value are listed.
+     */
+    public @NotNull Component details(int page, @Nullable String filter) {
+        return this.cachedDetails(Math.max(page, 1), filter == null || filter.isBlank() ? null : filter.toLowerCase());
+    }
+
+    /**
+     * @param page The page of servers to show, or 0 to show all of them.
+     */
+    private @NotNull Component cachedDetails(int page, @Nullable String filter) {
+        String key = page + ":" + (filter == null ? "" : filter);
+
+        long now = System.currentTimeMillis();
+        long generation = this.detailsGeneration.get();
+        CachedDetails cached = this.detailsCache.get(key);
+        if(cached != null && cached.generation() == generation && cached.expiresAt() > now) return cached.component();
+
+        Component rendered = this.renderDetails(page, filter);
+
+        // If the family changed while rendering, this render may be stale, so don't cache it.
+        // Entries which still slip in after an invalidation are ignored because their generation won't match.
+        if(this.detailsGeneration.get() != generation) return rendered;
+        if(this.detailsCache.size() >= DETAILS_CACHE_ENTRIES) this.detailsCache.clear();
+        this.detailsCache.put(key, new CachedDetails(rendered, generation, now + DETAILS_CACHE_MILLIS));
+        return rendered;
+    }
+
+    protected void invalidateDetails() {
+        this.detailsGeneration.incrementAndGet();
+        this.detailsCache.clear();
+    }
+
+    private @NotNull Component renderDetails(int page, @Nullable String filter) {
         AtomicReference<String> parentName = new AtomicReference<>("none");
         try {
             Flux<? extends Family> parent = this.parent().orElse(null);
@@ -301,16 +336,36 @@ public class StaticFamily extends Family {
             parent.compute(f -> parentName.set(f.id()), ()->parentName.set("[Unavailable]"), 10, TimeUnit.SECONDS);
         } catch (Exception ignore) {}
 
+        List<ServerSnapshot> servers = new ArrayList<>();
+        this.loadBalancer().ifPresent(l -> {
+            Set<String> locked = new HashSet<>();
+            l.lockedServers().forEach(s -> locked.add(s.id()));
+            l.servers().forEach(s -> servers.add(new ServerSnapshot(s, s.players(), locked.contains(s.id()))));
+        });
+        long players = servers.stream().mapToLong(ServerSnapshot::players).sum();
+
+        List<ServerSnapshot> matching = filter == null ? servers : servers.stream().filter(s ->
+            s.server().id().toLowerCase().contains(filter) ||
+            (s.server().displayName() != null && Objects.requireNonNull(s.server().displayName()).toLowerCase().contains(filter))
+        ).toList();
+        int pages = page == 0 ? 1 : Math.max(1, (matching.size() + DETAILS_PAGE_SIZE - 1) / DETAILS_PAGE_SIZE);
+        int currentPage = Math.min(page, pages);
+        List<ServerSnapshot> shown = page == 0 ? matching : matching.subList(
+            Math.min((currentPage - 1) * DETAILS_PAGE_SIZE, matching.size()),
+            Math.min(currentPage * DETAILS_PAGE_SIZE, matching.size())
+        );
+
+        var keyValue = RC.Lang("rustyconnector-keyValue");
         return join(
             newlines(),
-            RC.Lang("rustyconnector-keyValue").generate("Display Name", this.displayName() == null ? "No Display Name" : this.displayName()),
-            RC.Lang("rustyconnector-keyValue").generate("Parent Family", parentName.get()),
-            RC.Lang("rustyconnector-keyValue").generate("Servers", this.servers().size()),
-            RC.Lang("rustyconnector-keyValue").generate("Players", this.players()),
-            RC.Lang("rustyconnector-keyValue").generate("Residence Expiration", this.residenceExpiration.toString()),
-            RC.Lang("rustyconnector-keyValue").generate("Storage Protocol", this.storageProtocol),
-            RC.Lang("rustyconnector-keyValue").generate("Unavailable Protocol", this.unavailableProtocol),
-            RC.Lang("rustyconnector-keyValue").generate("Plugins", text(String.join(", ",this.modules().keySet()), BLUE)),
+            keyValue.generate("Display Name", this.displayName() == null ? "No Display Name" : this.displayName()),
+            keyValue.generate("Parent Family", parentName.get()),
+            keyValue.generate("Servers", servers.size()),
+            keyValue.generate("Players", players),
+            keyValue.generate("Residence Expiration", this.residenceExpiration.toString()),
+            keyValue.generate("Storage Protocol", this.storageProtocol),
+            keyValue.generate("Unavailable Protocol", this.unavailableProtocol),
+            keyValue.generate("Plugins", text(String.join(", ",this.modules().keySet()), BLUE)),
             space(),
             text("Extra Properties:", DARK_GRAY),
             (
@@ -319,46 +374,56 @@ public class StaticFamily extends Family {
                     :
                     join(
                         newlines(),
-                        this.metadata().entrySet().stream().map(e -> RC.Lang("rustyconnector-keyValue").generate(e.getKey(), e.getValue())).toList()
+                        this.metadata().entrySet().stream().map(e -> keyValue.generate(e.getKey(), e.getValue())).toList()
                     )
             ),
             space(),
             text("Servers:", DARK_GRAY),
             (
-                this.servers().isEmpty() ?
-                    text("There are no servers in this family.", DARK_GRAY)
+                matching.isEmpty() ?
+                    text(filter == null ? "There are no servers in this family." : "There are no servers matching '"+filter+"'.", DARK_GRAY)
                     :
                     join(
                         newlines(),
-                        this.servers().stream().map(s->{
-                            boolean locked = this.isLocked(s);
-                            return join(
-                                JoinConfiguration.separator(empty()),
-                                text("[", DARK_GRAY),
-                                text(s.id(), BLUE),
-                                space(),
-                                text(AddressUtil.addressToString(s.address()), YELLOW),
-                                text("]:", DARK_GRAY),
-                                space(),
-                                (
-                                        s.displayName() == null ? empty() :
-                                                text(Objects.requireNonNull(s.displayName()), AQUA)
-                                                        .append(space())
-                                ),
-                                text("(Players: ", DARK_GRAY),
-                                text(s.players(), YELLOW),
-                                text(")", DARK_GRAY),
-                                space(),
-                                (
-                                        locked ? text("Locked", RED) : empty()
-                                )
-                            );
-                        }).toList()
+                        shown.stream().map(s->join(
+                            JoinConfiguration.separator(empty()),
+                            text("[", DARK_GRAY),
+                            text(s.server().id(), BLUE),
+                            space(),
+                            text(AddressUtil.addressToString(s.server().address()), YELLOW),
+                            text("]:", DARK_GRAY),
+                            space(),
+                            (
+                                    s.server().displayName() == null ? empty() :
+                                            text(Objects.requireNonNull(s.server().displayName()), AQUA)
+                                                    .append(space())
+                            ),
+                            text("(Players: ", DARK_GRAY),
+                            text(s.players(), YELLOW),
+                            text(")", DARK_GRAY),
+                            space(),
+                            (
+                                    s.locked() ? text("Locked", RED) : empty()
+                            )
+                        )).toList()
                     )
+            ),
+            (
+                pages == 1 ? empty() :
+                    text("Page "+currentPage+" of "+pages+" ("+matching.size()+" servers)", DARK_GRAY)
             )
         );
     }
 
+    private record ServerSnapshot(@NotNull Server server, long players, boolean locked) {}
+    private record CachedDetails(@NotNull Component component, long generation, long expiresAt) {}
+
+    @Override
+    public void close() throws Exception {
+        this.telemetry.close();
+        super.close();
+    }
+
     public enum UnavailableProtocol {
         CANCEL_CONNECTION_ATTEMPT,
         ASSIGN_NEW_RESIDENCE,
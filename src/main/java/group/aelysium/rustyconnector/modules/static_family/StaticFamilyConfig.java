@@ -226,6 +226,40 @@ public class StaticFamilyConfig {
             "#"
     })
     public String metadata = "{\\\"serverSoftCap\\\": 30, \\\"serverHardCap\\\": 40}";
+
+    @Node(8)
+    @Comment({
+            "############################################################",
+            "#||||||||||||||||||||||||||||||||||||||||||||||||||||||||||#",
+            "#                        Telemetry                         #",
+            "#                                                          #",
+            "#               ---------------------------                #",
+            "#                                                          #",
+            "# | The fraction of players whose joins are recorded.      #",
+            "# | Recorded joins are used to track how often players     #",
+            "# | come back to their residence, and which players        #",
+            "# | reconnect the most.                                    #",
+            "#                                                          #",
+            "# | Fallbacks and residence changes are always recorded.   #",
+            "#                                                          #",
+            "# | Must be between 0.0 and 1.0                            #",
+            "# | Set to 0.0 to disable join sampling.                   #",
+            "#                                                          #",
+            "#               ---------------------------                #",
+            "#                                                          #",
+            "#||||||||||||||||||||||||||||||||||||||||||||||||||||||||||#",
+            "############################################################"
+    })
+    public double telemetrySampleRate = 0.1;
+
+    @Node(9)
+    @Comment({
+            "#",
+            "# How often, in seconds, the telemetry report should be written to 'static_families/telemetry/{id}.txt'",
+            "# Set to 0 to never write the report.",
+            "#"
+    })
+    public int telemetryDumpInterval = 600;
     
     public static StaticFamilyConfig New(String familyID) {
         Printer printer = new Printer()
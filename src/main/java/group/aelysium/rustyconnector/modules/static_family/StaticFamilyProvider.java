@@ -77,7 +77,10 @@ public class StaticFamilyProvider implements Module {
                                         LiquidTimestamp.from(config.residenceExpiration),
                                         config.unavailableProtocol,
                                         config.storageProtocol,
-                                        config.database
+                                        config.database,
+                                        config.telemetrySampleRate,
+                                        Path.of(DeclarativeYAML.basePath("rustyconnector")+"/static_families/telemetry/"+id+".txt"),
+                                        config.telemetryDumpInterval
                                     );
                                 } catch (Exception e) {
                                     RC.Error(Error.from(e).whileAttempting("To generate the static family "+id));
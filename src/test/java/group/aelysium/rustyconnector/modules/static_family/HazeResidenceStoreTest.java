@@ -0,0 +1,110 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HazeResidenceStoreTest {
+    private static final LocalDateTime JOINED = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    private static HazeResidenceStore store(MemoryHazeDatabase database) throws Exception {
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        store.prepare();
+        return store;
+    }
+
+    private static Residence residence(int player, String server, String family) {
+        return new Residence(0, new UUID(0, player), server, family, JOINED);
+    }
+
+    @Test
+    public void preparesTheTableOnce() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = store(database);
+        store.create(residence(1, "server-0", "survival"));
+        store.prepare();
+
+        assertTrue(database.doesDataHolderExist(HazeResidenceStore.RESIDENCE_TABLE));
+        assertEquals(1, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+    }
+
+    @Test
+    public void fetchesTheResidenceInTheFamily() throws Exception {
+        HazeResidenceStore store = store(new MemoryHazeDatabase());
+        store.create(residence(1, "server-0", "survival"));
+        store.create(residence(1, "server-1", "skyblock"));
+        store.create(residence(2, "server-2", "survival"));
+
+        assertEquals("server-1", store.fetch(new UUID(0, 1), "skyblock").orElseThrow().server_id());
+        assertEquals(Optional.empty(), store.fetch(new UUID(0, 2), "skyblock"));
+    }
+
+    @Test
+    public void fetchesTheResidencesOfAnyOfThePlayers() throws Exception {
+        HazeResidenceStore store = store(new MemoryHazeDatabase());
+        for (int i = 0; i < 10; i++) store.create(residence(i, "server-"+i, i % 2 == 0 ? "survival" : "skyblock"));
+        store.create(residence(3, "server-3", "survival"));
+
+        List<Residence> residences = store.fetchAll(List.of(new UUID(0, 2), new UUID(0, 3), new UUID(0, 100)));
+        Set<String> found = new HashSet<>();
+        residences.forEach(r -> found.add(r.player_uuid().getLeastSignificantBits() + "/" + r.family_id()));
+        assertEquals(Set.of("2/survival", "3/skyblock", "3/survival"), found);
+        assertEquals(List.of(), store.fetchAll(List.of()));
+    }
+
+    @Test
+    public void pagesInAscendingOrderOfID() throws Exception {
+        HazeResidenceStore store = store(new MemoryHazeDatabase());
+        for (int i = 0; i < 30; i++) store.create(residence(i, "server-"+(i % 3), i % 2 == 0 ? "survival" : "skyblock"));
+
+        List<Residence> first = store.page(null, null, 0, 10);
+        assertEquals(10, first.size());
+        for (int i = 0; i < first.size(); i++) assertEquals(i + 1, first.get(i).id());
+        assertEquals(11, store.page(null, null, 10, 10).get(0).id());
+
+        List<Integer> ids = new ArrayList<>();
+        int after = 0;
+        while (true) {
+            List<Residence> page = store.page("survival", "server-0", after, 2);
+            if(page.isEmpty()) break;
+            page.forEach(r -> {
+                assertEquals("survival", r.family_id());
+                assertEquals("server-0", r.server_id());
+                ids.add(r.id());
+            });
+            after = page.get(page.size() - 1).id();
+        }
+        assertEquals(List.of(1, 7, 13, 19, 25), ids);
+    }
+
+    @Test
+    public void updatesOnlyTheResidenceInTheFamily() throws Exception {
+        HazeResidenceStore store = store(new MemoryHazeDatabase());
+        store.create(residence(1, "server-0", "survival"));
+        store.create(residence(1, "server-0", "skyblock"));
+        store.create(residence(2, "server-0", "survival"));
+
+        store.update(new Residence(0, new UUID(0, 1), "server-5", "survival", JOINED.plusDays(1)));
+
+        assertEquals("server-5", store.fetch(new UUID(0, 1), "survival").orElseThrow().server_id());
+        assertEquals(JOINED.plusDays(1), store.fetch(new UUID(0, 1), "survival").orElseThrow().last_joined());
+        assertEquals("server-0", store.fetch(new UUID(0, 1), "skyblock").orElseThrow().server_id());
+        assertEquals("server-0", store.fetch(new UUID(0, 2), "survival").orElseThrow().server_id());
+    }
+
+    @Test
+    public void writesLastJoinedAsAnInstant() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = store(database);
+        store.create(residence(1, "server-0", "survival"));
+
+        Object stored = database.rows(HazeResidenceStore.RESIDENCE_TABLE).get(0).get("last_joined");
+        assertEquals(JOINED.toInstant(ZoneOffset.UTC), assertInstanceOf(Instant.class, stored));
+        assertEquals(JOINED, store.fetch(new UUID(0, 1), "survival").orElseThrow().last_joined());
+    }
+}
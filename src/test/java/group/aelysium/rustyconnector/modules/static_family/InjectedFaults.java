@@ -0,0 +1,49 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency and failures which in-memory stand-ins apply before every operation.
+ * Each thread draws from its own random, seeded from the provided seed.
+ */
+public class InjectedFaults {
+    public static final InjectedFaults NONE = new InjectedFaults(Duration.ZERO, Duration.ZERO, 0, 0);
+
+    protected final long minLatency;
+    protected final long maxLatency;
+    protected final double failureRate;
+    private final AtomicLong seeds;
+    private final ThreadLocal<SplittableRandom> random;
+
+    /**
+     * @param minLatency The minimum amount of time each operation takes.
+     * @param maxLatency The maximum amount of time each operation takes.
+     * @param failureRate The fraction of operations which should fail, between 0 and 1.
+     * @param seed The seed for latency and failures.
+     */
+    public InjectedFaults(@NotNull Duration minLatency, @NotNull Duration maxLatency, double failureRate, long seed) {
+        if(maxLatency.compareTo(minLatency) < 0) throw new IllegalArgumentException("maxLatency can't be less than minLatency.");
+        this.minLatency = minLatency.toNanos();
+        this.maxLatency = maxLatency.toNanos();
+        this.failureRate = failureRate;
+        this.seeds = new AtomicLong(seed);
+        this.random = ThreadLocal.withInitial(() -> new SplittableRandom(this.seeds.getAndIncrement()));
+    }
+
+    public void apply(@NotNull String operation) throws IOException {
+        if(this.maxLatency == 0 && this.failureRate <= 0) return;
+        SplittableRandom random = this.random.get();
+
+        if(this.maxLatency > 0)
+            LockSupport.parkNanos(this.minLatency == this.maxLatency ? this.minLatency : random.nextLong(this.minLatency, this.maxLatency + 1));
+
+        if(this.failureRate > 0 && random.nextDouble() < this.failureRate)
+            throw new IOException("Injected failure during "+operation);
+    }
+}
@@ -0,0 +1,317 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.common.haze.HazeDatabase;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.DataHolder;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.lib.Filter;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.CreateRequest;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.DeleteRequest;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.ReadRequest;
+import group.aelysium.rustyconnector.shaded.group.aelysium.haze.requests.UpdateRequest;
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * An in-memory stand-in for a Haze database.
+ * Every data holder gets an auto-incrementing {@code id}, and filters are evaluated the way SQL would, with {@code AND} binding tighter than {@code OR}.
+ * Databases don't promise any order without {@code ORDER BY}, so unordered reads return the newest rows first to catch callers relying on one.
+ * Like the residence table, data holders have no unique constraints, so racing creates will produce duplicate rows.
+ * <br/>
+ * Values are stored as they were given, and are converted to the type of the matching record component when read.
+ * {@link Instant}s are read back as UTC.
+ */
+public class MemoryHazeDatabase extends HazeDatabase {
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    protected final InjectedFaults faults;
+
+    public MemoryHazeDatabase(@NotNull String name, @NotNull InjectedFaults faults) {
+        super(name);
+        this.faults = faults;
+    }
+    public MemoryHazeDatabase() {
+        this("memory", InjectedFaults.NONE);
+    }
+
+    @Override
+    public boolean doesDataHolderExist(@NotNull String name) {
+        return this.tables.containsKey(name);
+    }
+
+    @Override
+    public void createDataHolder(@NotNull DataHolder holder) {
+        this.tables.putIfAbsent(holder.name(), new Table());
+    }
+
+    @Override
+    public void deleteDataHolder(@NotNull String name) {
+        this.tables.remove(name);
+    }
+
+    @Override
+    public ReadRequest newReadRequest(@NotNull String target) {
+        return new MemoryReadRequest(target);
+    }
+
+    @Override
+    public CreateRequest newCreateRequest(@NotNull String target) {
+        return new MemoryCreateRequest(target);
+    }
+
+    @Override
+    public UpdateRequest newUpdateRequest(@NotNull String target) {
+        return new MemoryUpdateRequest(target);
+    }
+
+    @Override
+    public DeleteRequest newDeleteRequest(@NotNull String target) {
+        return new MemoryDeleteRequest(target);
+    }
+
+    @Override
+    public @Nullable Component details() {
+        return null;
+    }
+
+    @Override
+    public void close() {}
+
+    /**
+     * @return The number of rows in the data holder.
+     */
+    public int size(@NotNull String holder) {
+        return this.table(holder).rows.size();
+    }
+
+    /**
+     * @return Copies of the rows in the data holder, as they were stored.
+     */
+    public @NotNull List<Map<String, Object>> rows(@NotNull String holder) {
+        return this.table(holder).rows.values().stream().map(Map::copyOf).toList();
+    }
+
+    /**
+     * @return The number of rows in the data holder which share the values of the provided keys with an earlier row.
+     */
+    public int duplicates(@NotNull String holder, @NotNull String... keys) {
+        Map<List<String>, Long> counts = this.table(holder).rows.values().stream().collect(Collectors.groupingBy(
+                row -> Arrays.stream(keys).map(k -> String.valueOf(row.get(k))).toList(),
+                Collectors.counting()
+        ));
+        return (int) counts.values().stream().mapToLong(c -> c - 1).sum();
+    }
+
+    private @NotNull Table table(@NotNull String name) {
+        Table table = this.tables.get(name);
+        if(table == null) throw new NoSuchElementException("No data holder exists with the name '"+name+"'.");
+        return table;
+    }
+
+    /**
+     * Checks if a row matches the filter.
+     * Conditions are split into groups wherever they're joined by {@code OR}, and the row has to match every condition in at least one group.
+     */
+    private static boolean matches(@Nullable Filter filter, @NotNull Map<String, Object> row) {
+        if(filter == null) return true;
+
+        boolean group = true;
+        boolean first = true;
+        for (var condition : filter.conditions()) {
+            if(!first && condition.operator() == Filter.Operator.OR) {
+                if(group) return true;
+                group = true;
+            }
+            first = false;
+            if(group) group = test(row.get(condition.key()), condition.qualifier(), condition.value());
+        }
+        return group;
+    }
+
+    private static boolean test(@Nullable Object stored, @NotNull Filter.Qualifier qualifier, @Nullable Object expected) {
+        if(qualifier == Filter.EQUALS) return compare(stored, expected) == 0;
+        if(qualifier == Filter.NOT_EQUALS) return compare(stored, expected) != 0;
+        if(qualifier == Filter.GREATER_THAN) return compare(stored, expected) > 0;
+        if(qualifier == Filter.LESS_THAN) return compare(stored, expected) < 0;
+        throw new UnsupportedOperationException("MemoryHazeDatabase doesn't support the qualifier "+qualifier);
+    }
+
+    /**
+     * Compares numbers by value and everything else by its string form, the same way it would be compared once stored in a column.
+     */
+    private static int compare(@Nullable Object stored, @Nullable Object expected) {
+        if(stored == null || expected == null) return stored == expected ? 0 : (stored == null ? -1 : 1);
+        if(stored instanceof Number a && expected instanceof Number b) return Long.compare(a.longValue(), b.longValue());
+        return String.valueOf(stored).compareTo(String.valueOf(expected));
+    }
+
+    private static <T> @NotNull T map(@NotNull Map<String, Object> row, @NotNull Class<T> type) throws Exception {
+        if(!type.isRecord()) throw new UnsupportedOperationException("MemoryHazeDatabase can only read rows into records.");
+
+        RecordComponent[] components = type.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        Object[] values = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            types[i] = components[i].getType();
+            values[i] = convert(row.get(components[i].getName()), types[i]);
+        }
+
+        Constructor<T> constructor = type.getDeclaredConstructor(types);
+        constructor.setAccessible(true);
+        return constructor.newInstance(values);
+    }
+
+    private static @Nullable Object convert(@Nullable Object value, @NotNull Class<?> type) {
+        if(value == null) return null;
+        if(type == UUID.class) return value instanceof UUID ? value : UUID.fromString(value.toString());
+        if(type == String.class) return value.toString();
+        if(type == int.class || type == Integer.class) return ((Number) value).intValue();
+        if(type == long.class || type == Long.class) return ((Number) value).longValue();
+        if(type == LocalDateTime.class && value instanceof Instant instant) return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+        return type.cast(value);
+    }
+
+    private static class Table {
+        final NavigableMap<Integer, Map<String, Object>> rows = new ConcurrentSkipListMap<>();
+        final AtomicInteger nextID = new AtomicInteger(0);
+    }
+
+    private class MemoryReadRequest extends ReadRequest {
+        private final String target;
+        private @Nullable Filter filter = null;
+        private @Nullable String orderBy = null;
+        private @Nullable Order order = null;
+        private int limit = Integer.MAX_VALUE;
+
+        MemoryReadRequest(@NotNull String target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        public void withFilter(@NotNull Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void orderBy(@NotNull String key, @NotNull Order order) {
+            this.orderBy = key;
+            this.order = order;
+        }
+
+        @Override
+        public void limit(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public <T> @NotNull Set<T> execute(@NotNull Class<T> type) throws Exception {
+            faults.apply("read");
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> row : table(this.target).rows.descendingMap().values())
+                if(matches(this.filter, row)) rows.add(row);
+
+            if(this.orderBy != null) {
+                String key = this.orderBy;
+                Comparator<Map<String, Object>> comparator = (a, b) -> compare(a.get(key), b.get(key));
+                rows.sort(this.order == Order.DESCENDING ? comparator.reversed() : comparator);
+            }
+
+            Set<T> results = new LinkedHashSet<>();
+            for (Map<String, Object> row : rows.subList(0, Math.min(this.limit, rows.size()))) results.add(map(row, type));
+            return results;
+        }
+    }
+
+    private class MemoryCreateRequest extends CreateRequest {
+        private final String target;
+        private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+        MemoryCreateRequest(@NotNull String target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        public void parameter(@NotNull String key, @Nullable Object value) {
+            this.parameters.put(key, value);
+        }
+
+        @Override
+        public void execute() throws Exception {
+            faults.apply("create");
+
+            Table table = table(this.target);
+            int id = table.nextID.incrementAndGet();
+            Map<String, Object> row = new HashMap<>(this.parameters);
+            row.put("id", id);
+            table.rows.put(id, row);
+        }
+    }
+
+    private class MemoryUpdateRequest extends UpdateRequest {
+        private final String target;
+        private final Map<String, Object> parameters = new LinkedHashMap<>();
+        private @Nullable Filter filter = null;
+
+        MemoryUpdateRequest(@NotNull String target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        public void withFilter(@NotNull Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void parameter(@NotNull String key, @Nullable Object value) {
+            this.parameters.put(key, value);
+        }
+
+        @Override
+        public void execute() throws Exception {
+            faults.apply("update");
+
+            table(this.target).rows.replaceAll((id, row) -> {
+                if(!matches(this.filter, row)) return row;
+                Map<String, Object> updated = new HashMap<>(row);
+                updated.putAll(this.parameters);
+                updated.put("id", id);
+                return updated;
+            });
+        }
+    }
+
+    private class MemoryDeleteRequest extends DeleteRequest {
+        private final String target;
+        private @Nullable Filter filter = null;
+
+        MemoryDeleteRequest(@NotNull String target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        public void withFilter(@NotNull Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void execute() throws Exception {
+            faults.apply("delete");
+
+            table(this.target).rows.values().removeIf(row -> matches(this.filter, row));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.proxy.family.Server;
+import group.aelysium.rustyconnector.proxy.family.load_balancing.LoadBalancer;
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory stand-in for a round-robin load balancer.
+ * Handing out servers is subject to the injected faults, an injected failure means no server is available.
+ */
+public class MemoryLoadBalancer extends LoadBalancer {
+    private final List<Server> servers = new CopyOnWriteArrayList<>();
+    private final Set<String> locked = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger index = new AtomicInteger(0);
+    protected final InjectedFaults faults;
+    protected final int attempts;
+
+    public MemoryLoadBalancer(@NotNull InjectedFaults faults, int attempts) {
+        super(false, false, attempts, null);
+        this.faults = faults;
+        this.attempts = attempts;
+    }
+    public MemoryLoadBalancer() {
+        this(InjectedFaults.NONE, 5);
+    }
+
+    @Override
+    public int attempts() {
+        return this.attempts;
+    }
+
+    @Override
+    public void addServer(@NotNull Server server) {
+        if(!this.containsServer(server.id())) this.servers.add(server);
+    }
+
+    @Override
+    public void removeServer(@NotNull Server server) {
+        this.servers.removeIf(s -> s.id().equals(server.id()));
+        this.locked.remove(server.id());
+    }
+
+    @Override
+    public @NotNull Optional<Server> fetchServer(@NotNull String id) {
+        return this.servers.stream().filter(s -> s.id().equals(id)).findAny();
+    }
+
+    @Override
+    public boolean containsServer(@NotNull String id) {
+        return this.fetchServer(id).isPresent();
+    }
+
+    @Override
+    public void lockServer(@NotNull Server server) {
+        if(this.containsServer(server.id())) this.locked.add(server.id());
+    }
+
+    @Override
+    public void unlockServer(@NotNull Server server) {
+        this.locked.remove(server.id());
+    }
+
+    @Override
+    public boolean isLocked(@NotNull Server server) {
+        return this.locked.contains(server.id());
+    }
+
+    @Override
+    public @NotNull List<Server> servers() {
+        return List.copyOf(this.servers);
+    }
+
+    @Override
+    public @NotNull List<Server> lockedServers() {
+        return this.servers.stream().filter(this::isLocked).toList();
+    }
+
+    @Override
+    public @NotNull List<Server> unlockedServers() {
+        return this.servers.stream().filter(s -> !this.isLocked(s)).toList();
+    }
+
+    @Override
+    public @NotNull Optional<Server> current() {
+        List<Server> unlocked = this.unlockedServers();
+        if(unlocked.isEmpty()) return Optional.empty();
+        return Optional.of(unlocked.get(Math.floorMod(this.index.get(), unlocked.size())));
+    }
+
+    @Override
+    public void forceIterate() {
+        this.index.incrementAndGet();
+    }
+
+    @Override
+    public @NotNull Optional<Server> availableServer() {
+        try {
+            this.faults.apply("availableServer");
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+
+        List<Server> unlocked = this.unlockedServers();
+        if(unlocked.isEmpty()) return Optional.empty();
+        return Optional.of(unlocked.get(Math.floorMod(this.index.getAndIncrement(), unlocked.size())));
+    }
+
+    @Override
+    public void completeSort() {}
+
+    @Override
+    public void singleSort() {}
+
+    @Override
+    public @Nullable Component details() {
+        return null;
+    }
+
+    @Override
+    public void close() {}
+}
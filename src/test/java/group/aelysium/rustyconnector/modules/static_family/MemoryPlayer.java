@@ -0,0 +1,72 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.proxy.player.Player;
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An in-memory stand-in for a player, which remembers the server it's connected to and the messages it was sent.
+ */
+public class MemoryPlayer extends Player {
+    private final AtomicReference<MemoryServer> server = new AtomicReference<>(null);
+    private final AtomicReference<MemoryServer> lastServer = new AtomicReference<>(null);
+    private final AtomicLong connections = new AtomicLong(0);
+    private final List<Component> messages = new CopyOnWriteArrayList<>();
+
+    public MemoryPlayer(@NotNull UUID id, @NotNull String username) {
+        super(id, username);
+    }
+
+    @Override
+    public void message(@NotNull Component message) {
+        this.messages.add(message);
+    }
+
+    public @NotNull List<Component> messages() {
+        return List.copyOf(this.messages);
+    }
+
+    /**
+     * @return The server this player is connected to, or null if they're offline.
+     */
+    public @Nullable MemoryServer connectedServer() {
+        return this.server.get();
+    }
+
+    /**
+     * @return The server this player last connected to, even if they've left it since.
+     */
+    public @Nullable MemoryServer lastServer() {
+        return this.lastServer.get();
+    }
+
+    /**
+     * @return The number of times this player has been connected to a server.
+     */
+    public long connections() {
+        return this.connections.get();
+    }
+
+    /**
+     * @return The server this player was connected to before.
+     */
+    @Nullable MemoryServer connected(@NotNull MemoryServer server) {
+        this.lastServer.set(server);
+        this.connections.incrementAndGet();
+        return this.server.getAndSet(server);
+    }
+
+    /**
+     * @return {@code true} if this player was connected to the server.
+     */
+    boolean disconnected(@NotNull MemoryServer server) {
+        return this.server.compareAndSet(server, null);
+    }
+}
@@ -0,0 +1,74 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.proxy.family.Server;
+import group.aelysium.rustyconnector.proxy.player.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory stand-in for a server, which connects players without going through the proxy.
+ * Connections can be refused, and are also subject to the injected faults.
+ * An injected failure fails the connection request, the same way the proxy reports a server that couldn't be reached.
+ */
+public class MemoryServer extends Server {
+    private final AtomicLong players = new AtomicLong(0);
+    private final AtomicBoolean refusing = new AtomicBoolean(false);
+    protected final InjectedFaults faults;
+
+    public MemoryServer(@NotNull String id, int port, @NotNull InjectedFaults faults) {
+        super(id, new InetSocketAddress("127.0.0.1", port), Map.of(), 15);
+        this.faults = faults;
+    }
+    public MemoryServer(@NotNull String id, int port) {
+        this(id, port, InjectedFaults.NONE);
+    }
+
+    @Override
+    public long players() {
+        return this.players.get();
+    }
+
+    /**
+     * Makes connections to this server fail until {@link #acceptConnections()} is called.
+     */
+    public void refuseConnections() {
+        this.refusing.set(true);
+    }
+
+    public void acceptConnections() {
+        this.refusing.set(false);
+    }
+
+    @Override
+    public Player.Connection.Request connect(@NotNull Player player) {
+        return this.connect(player, Player.Connection.Power.MINIMAL);
+    }
+
+    @Override
+    public Player.Connection.Request connect(@NotNull Player player, @NotNull Player.Connection.Power power) {
+        try {
+            this.faults.apply("connect");
+        } catch (Exception e) {
+            return Player.Connection.Request.failedRequest(player, e.getMessage());
+        }
+        if(this.refusing.get()) return Player.Connection.Request.failedRequest(player, "The server refused the connection.");
+
+        MemoryServer previous = player instanceof MemoryPlayer memoryPlayer ? memoryPlayer.connected(this) : null;
+        if(previous != this) {
+            this.players.incrementAndGet();
+            if(previous != null) previous.players.decrementAndGet();
+        }
+        return Player.Connection.Request.successfulRequest(player, "Connected.", this);
+    }
+
+    /**
+     * Removes a player who was connected to this server.
+     */
+    public void leave(@NotNull MemoryPlayer player) {
+        if(player.disconnected(this)) this.players.decrementAndGet();
+    }
+}
@@ -0,0 +1,138 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResidenceArchiveTest {
+    @TempDir
+    Path directory;
+
+    private static HazeResidenceStore store() throws Exception {
+        HazeResidenceStore store = new HazeResidenceStore(new MemoryHazeDatabase());
+        store.prepare();
+        return store;
+    }
+
+    private static MemoryHazeDatabase database(HazeResidenceStore store) {
+        return (MemoryHazeDatabase) store.database;
+    }
+
+    private static HazeResidenceStore populated(int residences) throws Exception {
+        HazeResidenceStore store = store();
+        LocalDateTime joined = LocalDateTime.of(2026, 1, 1, 12, 0);
+        for (int i = 0; i < residences; i++)
+            store.create(new Residence(0, new UUID(0, i), "server-"+(i % 3), i % 2 == 0 ? "survival" : "skyblock", joined.plusMinutes(i)));
+        return store;
+    }
+
+    @Test
+    public void roundTripsResidences() throws Exception {
+        for (String name : new String[]{ "residences.tsv", "residences.tsv.gz" }) {
+            Path archive = this.directory.resolve(name);
+            HazeResidenceStore source = populated(1000);
+            HazeResidenceStore target = store();
+
+            assertEquals(1000, new ResidenceArchive(source, 64, 16).exportTo(archive, null, null));
+            assertEquals(1000, new ResidenceArchive(target, 64, 16).importFrom(archive, null, null));
+
+            assertEquals(source.page(null, null, 0, Integer.MAX_VALUE), target.page(null, null, 0, Integer.MAX_VALUE));
+            assertFalse(Files.exists(archive.resolveSibling(name + ".export-progress")));
+            assertFalse(Files.exists(archive.resolveSibling(name + ".import-progress")));
+        }
+    }
+
+    @Test
+    public void filtersByFamilyAndServer() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        HazeResidenceStore source = populated(600);
+
+        assertEquals(300, new ResidenceArchive(source).exportTo(archive, "survival", null));
+        assertEquals(100, new ResidenceArchive(store()).importFrom(archive, null, "server-0"));
+    }
+
+    @Test
+    public void reimportingSkipsExistingResidences() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        HazeResidenceStore target = store();
+        new ResidenceArchive(populated(200)).exportTo(archive, null, null);
+
+        assertEquals(200, new ResidenceArchive(target).importFrom(archive, null, null));
+        assertEquals(0, new ResidenceArchive(target).importFrom(archive, null, null));
+        assertEquals(200, database(target).size(HazeResidenceStore.RESIDENCE_TABLE));
+    }
+
+    @Test
+    public void importsRepeatedPlayersOnce() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        new ResidenceArchive(populated(10)).exportTo(archive, null, null);
+        Files.writeString(archive, Files.readString(archive).repeat(3));
+
+        HazeResidenceStore target = store();
+        assertEquals(10, new ResidenceArchive(target, 64, 16).importFrom(archive, null, null));
+        assertEquals(0, database(target).duplicates(HazeResidenceStore.RESIDENCE_TABLE, "player_uuid", "family_id"));
+    }
+
+    @Test
+    public void resumesInterruptedImports() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        new ResidenceArchive(populated(100)).exportTo(archive, null, null);
+        Files.writeString(archive.resolveSibling("residences.tsv.import-progress"), "\t\t40");
+
+        HazeResidenceStore target = store();
+        assertEquals(60, new ResidenceArchive(target).importFrom(archive, null, null));
+    }
+
+    @Test
+    public void resumesInterruptedExports() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        HazeResidenceStore source = populated(100);
+        new ResidenceArchive(source).exportTo(archive, "survival", null);
+        List<String> exported = Files.readAllLines(archive);
+
+        // Killed after the first 20 residences were checkpointed, while the next page was being flushed halfway through a line.
+        String newline = System.lineSeparator();
+        String checkpointed = String.join(newline, exported.subList(0, 20)) + newline;
+        String unfinished = String.join(newline, exported.subList(20, 25)) + newline + exported.get(25).substring(0, 10);
+        Files.writeString(archive, checkpointed + unfinished);
+        Files.writeString(archive.resolveSibling("residences.tsv.export-progress"), "survival\t\t39\t" + checkpointed.getBytes(StandardCharsets.UTF_8).length);
+
+        assertEquals(30, new ResidenceArchive(source).exportTo(archive, "survival", null));
+        assertEquals(exported, Files.readAllLines(archive));
+        assertEquals(50, new ResidenceArchive(store()).importFrom(archive, null, null));
+    }
+
+    @Test
+    public void refusesToResumeIntoAShorterArchive() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        HazeResidenceStore source = populated(100);
+        new ResidenceArchive(source).exportTo(archive, null, null);
+        long length = Files.size(archive);
+        Files.writeString(archive.resolveSibling("residences.tsv.export-progress"), "\t\t40\t" + (length + 1));
+
+        assertThrows(IllegalStateException.class, () -> new ResidenceArchive(source).exportTo(archive, null, null));
+        assertEquals(length, Files.size(archive));
+    }
+
+    @Test
+    public void refusesToResumeWithDifferentFilters() throws Exception {
+        Path archive = this.directory.resolve("residences.tsv");
+        HazeResidenceStore source = populated(100);
+        new ResidenceArchive(source).exportTo(archive, null, null);
+        Files.writeString(archive.resolveSibling("residences.tsv.export-progress"), "survival\t\t40\t1000");
+
+        assertThrows(IllegalStateException.class, () -> new ResidenceArchive(source).exportTo(archive, "skyblock", null));
+        assertThrows(IllegalStateException.class, () -> new ResidenceArchive(source).exportTo(archive, null, null));
+
+        HazeResidenceStore target = store();
+        assertEquals(100, new ResidenceArchive(target).importFrom(archive, null, null));
+    }
+}
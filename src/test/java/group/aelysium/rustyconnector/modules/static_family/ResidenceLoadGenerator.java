@@ -0,0 +1,233 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.proxy.player.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays joins and leaves from many threads at once against a {@link StaticFamily}.
+ * The players and the operations each worker performs are derived from the seed, so every run replays the same workload.
+ * <br/>
+ * The generator remembers which server each player should be sent to, and counts a misroute whenever the family sends them somewhere else.
+ */
+public class ResidenceLoadGenerator {
+    protected final StaticFamily family;
+    protected final MemoryLoadBalancer loadBalancer;
+    protected final long seed;
+    private final List<MemoryPlayer> players;
+    private final Map<UUID, String> expected = new ConcurrentHashMap<>();
+
+    /**
+     * @param loadBalancer The load balancer the family was built with.
+     */
+    public ResidenceLoadGenerator(@NotNull StaticFamily family, @NotNull MemoryLoadBalancer loadBalancer, int players, long seed) {
+        this.family = family;
+        this.loadBalancer = loadBalancer;
+        this.seed = seed;
+
+        Random random = new Random(seed);
+        List<MemoryPlayer> generated = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) generated.add(new MemoryPlayer(new UUID(random.nextLong(), random.nextLong()), "player-"+i));
+        this.players = List.copyOf(generated);
+    }
+
+    public @NotNull List<MemoryPlayer> players() {
+        return this.players;
+    }
+
+    /**
+     * Performs the provided number of operations, spread evenly across the provided number of threads.
+     * Roughly a third of operations try to make an online player leave the server they joined, every other operation is a join.
+     * If the chosen player isn't online, they join instead.
+     */
+    public @NotNull Report run(int operations, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Counters counters = new Counters();
+        List<Future<long[]>> workers = new ArrayList<>();
+
+        try {
+            for (int worker = 0; worker < threads; worker++) {
+                int share = operations / threads + (worker < operations % threads ? 1 : 0);
+                Random random = new Random(this.seed * 31 + worker);
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[share];
+                    int joins = 0;
+                    start.await();
+                    for (int i = 0; i < share; i++) {
+                        MemoryPlayer player = this.players.get(random.nextInt(this.players.size()));
+                        if(random.nextInt(3) == 0 && this.leave(player, counters)) continue;
+                        latencies[joins++] = this.join(player, counters);
+                    }
+                    return Arrays.copyOf(latencies, joins);
+                }));
+            }
+            start.countDown();
+
+            List<long[]> latencies = new ArrayList<>();
+            for (Future<long[]> worker : workers) latencies.add(worker.get());
+            return counters.report(latencies);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Joins every player once, one after another.
+     */
+    public @NotNull Report joinEach() {
+        Counters counters = new Counters();
+        long[] latencies = new long[this.players.size()];
+        for (int i = 0; i < this.players.size(); i++) latencies[i] = this.join(this.players.get(i), counters);
+        return counters.report(List.of(latencies));
+    }
+
+    /**
+     * Joins the player through {@link StaticFamily#connect(Player)} and checks where they ended up against the server they're expected to be on.
+     * The family reports a failed request even when a fallback connected the player, so joins are judged by the player's connections rather than by the request.
+     */
+    private long join(@NotNull MemoryPlayer player, @NotNull Counters counters) {
+        String expected = this.expected.get(player.id());
+        if(expected == null || this.loadBalancer.containsServer(expected)) return this.timed(counters, () -> this.joinResident(player, counters));
+
+        // Fallbacks for the same player are replayed one at a time.
+        // The family moves residences last-writer-wins, so the expected server couldn't follow two racing fallbacks.
+        synchronized (player) {
+            return this.timed(counters, () -> this.joinUnavailable(player, counters));
+        }
+    }
+
+    private void joinResident(@NotNull MemoryPlayer player, @NotNull Counters counters) throws Exception {
+        long connections = player.connections();
+        this.family.connect(player).result().get(10, TimeUnit.SECONDS);
+        if(player.connections() == connections) {
+            counters.failures.incrementAndGet();
+            return;
+        }
+
+        // Other workers may have moved the player on or made them leave already, but they'll have been sent to the same server.
+        String server = player.lastServer().id();
+        String previous = this.expected.putIfAbsent(player.id(), server);
+        if(previous == null) counters.assigned.incrementAndGet();
+        else if(previous.equals(server)) counters.resident.incrementAndGet();
+        else counters.misroutes.incrementAndGet();
+    }
+
+    private void joinUnavailable(@NotNull MemoryPlayer player, @NotNull Counters counters) throws Exception {
+        String expected = this.expected.get(player.id());
+        if(this.loadBalancer.containsServer(expected)) {
+            this.joinResident(player, counters);
+            return;
+        }
+
+        counters.fallbacks.incrementAndGet();
+        long connections = player.connections();
+        this.family.connect(player).result().get(10, TimeUnit.SECONDS);
+        boolean connected = player.connections() != connections;
+
+        if(this.family.unavailableProtocol() == StaticFamily.UnavailableProtocol.CANCEL_CONNECTION_ATTEMPT) {
+            if(connected) counters.misroutes.incrementAndGet();
+            return;
+        }
+        if(!connected) {
+            counters.failures.incrementAndGet();
+            return;
+        }
+        if(this.family.unavailableProtocol() == StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)
+            this.expected.put(player.id(), player.lastServer().id());
+    }
+
+    /**
+     * @return How long the join took, in nanoseconds. Joins which throw are counted as failures.
+     */
+    private long timed(@NotNull Counters counters, @NotNull Join join) {
+        long start = System.nanoTime();
+        try {
+            join.run();
+        } catch (Exception e) {
+            counters.failures.incrementAndGet();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Makes the player leave the server they're on, if they're online.
+     * @return {@code true} if the player was online.
+     */
+    private boolean leave(@NotNull MemoryPlayer player, @NotNull Counters counters) {
+        MemoryServer server = player.connectedServer();
+        if(server == null) return false;
+
+        server.leave(player);
+        counters.leaves.incrementAndGet();
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Join {
+        void run() throws Exception;
+    }
+
+    private static class Counters {
+        final AtomicInteger assigned = new AtomicInteger();
+        final AtomicInteger resident = new AtomicInteger();
+        final AtomicInteger fallbacks = new AtomicInteger();
+        final AtomicInteger leaves = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger misroutes = new AtomicInteger();
+
+        Report report(@NotNull List<long[]> latencies) {
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Report(
+                    all.length,
+                    this.leaves.get(),
+                    this.assigned.get(),
+                    this.resident.get(),
+                    this.fallbacks.get(),
+                    this.failures.get(),
+                    this.misroutes.get(),
+                    percentile(all, 0.50),
+                    percentile(all, 0.90),
+                    percentile(all, 0.99),
+                    all.length == 0 ? 0 : all[all.length - 1]
+            );
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if(sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+
+    /**
+     * Latencies are in nanoseconds, and only cover joins.
+     * @param fallbacks The number of joins whose expected server was gone, including cancelled ones.
+     * @param failures The number of joins which didn't connect the player, other than cancelled fallbacks.
+     * @param misroutes The number of joins which sent the player to a different server than they were expected to be on.
+     */
+    public record Report(
+            int joins,
+            int leaves,
+            int assigned,
+            int resident,
+            int fallbacks,
+            int failures,
+            int misroutes,
+            long p50,
+            long p90,
+            long p99,
+            long max
+    ) {
+        @Override
+        public String toString() {
+            return String.format(
+                    "joins=%d leaves=%d assigned=%d resident=%d fallbacks=%d failures=%d misroutes=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    joins, leaves, assigned, resident, fallbacks, failures, misroutes,
+                    p50 / 1e6, p90 / 1e6, p99 / 1e6, max / 1e6
+            );
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.proxy.family.Server;
+import group.aelysium.rustyconnector.proxy.player.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResidenceResolverTest {
+    private static final String FAMILY = "survival";
+
+    private static MemoryLoadBalancer loadBalancer(int servers) {
+        MemoryLoadBalancer loadBalancer = new MemoryLoadBalancer();
+        for (int i = 0; i < servers; i++) loadBalancer.addServer(new MemoryServer("server-"+i, 25565 + i));
+        return loadBalancer;
+    }
+
+    private static MemoryServer server(MemoryLoadBalancer loadBalancer, String id) {
+        return (MemoryServer) loadBalancer.fetchServer(id).orElseThrow();
+    }
+
+    private static HazeResidenceStore store(MemoryHazeDatabase database) throws Exception {
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        store.prepare();
+        return store;
+    }
+
+    private static int duplicates(MemoryHazeDatabase database) {
+        return database.duplicates(HazeResidenceStore.RESIDENCE_TABLE, "player_uuid", "family_id");
+    }
+
+    private static Supplier<Optional<String>> availableServer(MemoryLoadBalancer loadBalancer) {
+        return () -> loadBalancer.availableServer().map(Server::id);
+    }
+
+    private static ResidenceResolver.Connector<Server> connector(MemoryPlayer player) {
+        return server -> {
+            Player.Connection.Result result = server.connect(player).result().get(10, TimeUnit.SECONDS);
+            return result.connected() ? result.server() : null;
+        };
+    }
+
+    private static ResidenceResolver resolver(ResidenceStore store, StaticFamily.UnavailableProtocol protocol) {
+        return resolver(store, StaticFamily.StorageProtocol.ON_FIRST_JOIN, protocol);
+    }
+
+    private static ResidenceResolver resolver(ResidenceStore store, StaticFamily.StorageProtocol storage, StaticFamily.UnavailableProtocol protocol) {
+        return new ResidenceResolver(
+                FAMILY,
+                storage,
+                protocol,
+                store,
+                new ResidenceTelemetry(FAMILY, 1, null, 0)
+        );
+    }
+
+    @Test
+    public void residencesAreNeverAssignedOnJoinWhenStoredOnFirstLeave() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(2);
+        ResidenceResolver resolver = resolver(store(database), StaticFamily.StorageProtocol.ON_FIRST_LEAVE, StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR);
+
+        assertThrows(NoSuchElementException.class, () -> resolver.resolve(new UUID(0, 1), loadBalancer::containsServer, availableServer(loadBalancer)));
+        assertEquals(0, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+    }
+
+    @Test
+    public void slowPlayersDontBlockOthers() throws Exception {
+        // Both ids share a hash code, so they would collide on any hash-striped lock.
+        UUID slow = new UUID(0, 1);
+        UUID fast = new UUID(1, 0);
+        assertEquals(slow.hashCode(), fast.hashCode());
+
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = new HazeResidenceStore(database) {
+            @Override
+            public Optional<Residence> fetch(UUID player, String familyID) throws Exception {
+                if(player.equals(slow)) release.await();
+                return super.fetch(player, familyID);
+            }
+        };
+        store.prepare();
+        MemoryLoadBalancer loadBalancer = loadBalancer(2);
+        ResidenceResolver resolver = resolver(store, StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<ResidenceResolver.Resolution> slowFirst = executor.submit(() -> resolver.resolve(slow, loadBalancer::containsServer, availableServer(loadBalancer)));
+            Future<ResidenceResolver.Resolution> slowSecond = executor.submit(() -> resolver.resolve(slow, loadBalancer::containsServer, availableServer(loadBalancer)));
+            Future<ResidenceResolver.Resolution> other = executor.submit(() -> resolver.resolve(fast, loadBalancer::containsServer, availableServer(loadBalancer)));
+
+            assertEquals(ResidenceResolver.Resolution.Status.ASSIGNED, other.get(5, TimeUnit.SECONDS).status());
+            assertFalse(slowFirst.isDone() || slowSecond.isDone());
+
+            release.countDown();
+            assertEquals(slowFirst.get(5, TimeUnit.SECONDS).serverID(), slowSecond.get(5, TimeUnit.SECONDS).serverID());
+            assertEquals(0, duplicates(database));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fallbackMovesPastRefusingServers() {
+        MemoryLoadBalancer loadBalancer = loadBalancer(4);
+        MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player");
+        loadBalancer.forceIterate();
+        server(loadBalancer, "server-1").refuseConnections();
+        server(loadBalancer, "server-2").refuseConnections();
+
+        Optional<Server> connected = ResidenceResolver.fallback(3, loadBalancer::current, connector(player), loadBalancer::forceIterate);
+        assertEquals("server-3", connected.orElseThrow().id());
+        assertEquals("server-3", loadBalancer.current().orElseThrow().id());
+        assertSame(server(loadBalancer, "server-3"), player.connectedServer());
+    }
+
+    @Test
+    public void fallbackGivesUpAfterItsAttempts() {
+        MemoryLoadBalancer loadBalancer = loadBalancer(4);
+        MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player");
+        server(loadBalancer, "server-0").refuseConnections();
+        server(loadBalancer, "server-1").refuseConnections();
+
+        assertEquals(Optional.empty(), ResidenceResolver.fallback(2, loadBalancer::current, connector(player), loadBalancer::forceIterate));
+        assertEquals("server-2", loadBalancer.current().orElseThrow().id());
+        assertNull(player.connectedServer());
+    }
+
+    @Test
+    public void fallbackTreatsConnectionErrorsAsFailedAttempts() {
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player");
+        AtomicInteger calls = new AtomicInteger();
+
+        Optional<Server> connected = ResidenceResolver.fallback(3, loadBalancer::current, server -> {
+            if(calls.incrementAndGet() == 1) throw new IllegalStateException("Injected failure");
+            return connector(player).connect(server);
+        }, loadBalancer::forceIterate);
+
+        assertEquals("server-1", connected.orElseThrow().id());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void fallbackStopsWhenNoServersAreAvailable() {
+        MemoryLoadBalancer loadBalancer = loadBalancer(2);
+        loadBalancer.lockServer(server(loadBalancer, "server-0"));
+        loadBalancer.lockServer(server(loadBalancer, "server-1"));
+        AtomicInteger calls = new AtomicInteger();
+
+        Optional<Server> connected = ResidenceResolver.fallback(5, loadBalancer::current, server -> {
+            calls.incrementAndGet();
+            return server;
+        }, loadBalancer::forceIterate);
+
+        assertEquals(Optional.empty(), connected);
+        assertEquals(0, calls.get());
+    }
+}
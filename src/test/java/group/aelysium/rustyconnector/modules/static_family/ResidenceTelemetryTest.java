@@ -0,0 +1,98 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResidenceTelemetryTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void measuresIntervalsBetweenJoins() {
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 1, null, 0);
+        UUID player = new UUID(1, 1);
+
+        telemetry.recordJoin(player, START);
+        telemetry.recordJoin(player, START + Duration.ofSeconds(30).toMillis());
+        telemetry.recordJoin(player, START + Duration.ofHours(2).toMillis());
+        telemetry.recordJoin(player, START + Duration.ofDays(3).toMillis());
+
+        Map<String, Long> intervals = telemetry.rejoinIntervals();
+        assertEquals(1, (long) intervals.get("< 1m"));
+        assertEquals(1, (long) intervals.get("< 6h"));
+        assertEquals(1, (long) intervals.get("< 7d"));
+        assertEquals(3, intervals.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(3, telemetry.estimateRejoins(player));
+    }
+
+    @Test
+    public void firstJoinsAreNotRejoins() {
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 1, null, 0);
+        for (int i = 0; i < 1000; i++) telemetry.recordJoin(new UUID(2, i), START);
+
+        assertEquals(0, telemetry.rejoinIntervals().values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(telemetry.topReconnectingPlayers().isEmpty());
+    }
+
+    @Test
+    public void samplesWholePlayers() {
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 0.25, null, 0);
+        int players = 4000;
+        for (int i = 0; i < players; i++) {
+            UUID player = new UUID(3, i * 0x9E3779B97F4A7C15L);
+            telemetry.recordJoin(player, START);
+            telemetry.recordJoin(player, START + 1000);
+        }
+
+        long recorded = telemetry.rejoinIntervals().get("< 1m");
+        assertTrue(recorded > players * 0.2 && recorded < players * 0.3, "recorded "+recorded+" rejoins");
+    }
+
+    @Test
+    public void countsEveryRejoinOnceTheLastSeenTableIsFull() {
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 1, null, 0);
+        int players = 50_000;
+        for (int i = 0; i < players; i++) telemetry.recordJoin(new UUID(6, i), START);
+        for (int i = 0; i < players; i++) telemetry.recordJoin(new UUID(6, i), START + 60_000L);
+
+        for (int i = 0; i < players; i++) assertTrue(telemetry.estimateRejoins(new UUID(6, i)) >= 1);
+        assertEquals(ResidenceTelemetry.TOP_PLAYERS, telemetry.topReconnectingPlayers().size());
+
+        long measured = telemetry.rejoinIntervals().get("< 10m");
+        assertTrue(measured > 0);
+        assertTrue(measured + telemetry.lastSeenEvictions() >= players, "every rejoin was either measured or reported as evicted");
+    }
+
+    @Test
+    public void writesAFinalReportOnClose() throws Exception {
+        Path report = this.directory.resolve("telemetry/survival.txt");
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 1, report, 1);
+        telemetry.recordFallback(StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR);
+        telemetry.close();
+
+        assertTrue(Files.readString(report).contains("CONNECT_WITH_ERROR: 1"));
+        assertFalse(Files.exists(report.resolveSibling("survival.txt.tmp")));
+    }
+
+    @Test
+    public void ranksFrequentReconnects() {
+        ResidenceTelemetry telemetry = new ResidenceTelemetry("survival", 1, null, 0);
+        UUID frequent = new UUID(4, 4);
+        for (int i = 0; i <= 50; i++) telemetry.recordJoin(frequent, START + i * 60_000L);
+        for (int p = 0; p < 100; p++)
+            for (int i = 0; i <= 2; i++) telemetry.recordJoin(new UUID(5, p), START + i * 60_000L);
+
+        assertEquals(frequent, telemetry.topReconnectingPlayers().get(0).getKey());
+        assertEquals(ResidenceTelemetry.TOP_PLAYERS, telemetry.topReconnectingPlayers().size());
+    }
+}
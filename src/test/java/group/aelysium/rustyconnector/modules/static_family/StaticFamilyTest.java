@@ -0,0 +1,311 @@
+package group.aelysium.rustyconnector.modules.static_family;
+
+import group.aelysium.rustyconnector.common.modules.Module;
+import group.aelysium.rustyconnector.proxy.family.load_balancing.LoadBalancer;
+import group.aelysium.rustyconnector.proxy.player.Player;
+import group.aelysium.rustyconnector.proxy.util.LiquidTimestamp;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StaticFamilyTest {
+    private static final String FAMILY = "survival";
+    private static final long SEED = 42;
+
+    private static MemoryLoadBalancer loadBalancer(int servers) {
+        return loadBalancer(servers, 5);
+    }
+
+    private static MemoryLoadBalancer loadBalancer(int servers, int attempts) {
+        MemoryLoadBalancer loadBalancer = new MemoryLoadBalancer(InjectedFaults.NONE, attempts);
+        for (int i = 0; i < servers; i++) loadBalancer.addServer(new MemoryServer("server-"+i, 25565 + i));
+        return loadBalancer;
+    }
+
+    private static StaticFamily family(MemoryHazeDatabase database, MemoryLoadBalancer loadBalancer, StaticFamily.UnavailableProtocol protocol) throws Exception {
+        return new StaticFamily(
+                FAMILY,
+                null,
+                null,
+                Map.of(),
+                new Module.Builder<LoadBalancer>("LoadBalancer", "Provides load balancing for this family.") {
+                    @Override
+                    public LoadBalancer get() {
+                        return loadBalancer;
+                    }
+                },
+                LiquidTimestamp.from("30 DAYS"),
+                protocol,
+                StaticFamily.StorageProtocol.ON_FIRST_JOIN,
+                "memory",
+                database,
+                1,
+                null,
+                0
+        );
+    }
+
+    private static MemoryServer server(MemoryLoadBalancer loadBalancer, String id) {
+        return (MemoryServer) loadBalancer.fetchServer(id).orElseThrow();
+    }
+
+    private static String residence(MemoryHazeDatabase database, MemoryPlayer player) throws Exception {
+        return new HazeResidenceStore(database).fetch(player.id(), FAMILY).orElseThrow().server_id();
+    }
+
+    private static int duplicates(MemoryHazeDatabase database) {
+        return database.duplicates(HazeResidenceStore.RESIDENCE_TABLE, "player_uuid", "family_id");
+    }
+
+    private static Player.Connection.Result connect(StaticFamily family, MemoryPlayer player) throws Exception {
+        return family.connect(player).result().get(10, TimeUnit.SECONDS);
+    }
+
+    private static void assertLatencies(ResidenceLoadGenerator.Report report) {
+        assertTrue(report.joins() > 0);
+        assertTrue(report.p50() > 0);
+        assertTrue(report.p50() <= report.p90());
+        assertTrue(report.p90() <= report.p99());
+        assertTrue(report.p99() <= report.max());
+    }
+
+    @Test
+    public void firstJoinsAssignAResidence() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+
+            Player.Connection.Result result = connect(family, player);
+            assertTrue(result.connected());
+            assertSame(result.server(), player.connectedServer());
+            assertEquals(result.server().id(), residence(database, player));
+            assertEquals(1, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+        }
+    }
+
+    @Test
+    public void rejoinsGoToTheResidentServer() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+            String resident = connect(family, player).server().id();
+
+            for (int i = 0; i < 5; i++) {
+                MemoryServer server = player.connectedServer();
+                server.leave(player);
+                // Move the load balancer along so a rejoin which ignored the residence would land elsewhere.
+                loadBalancer.forceIterate();
+                assertEquals(resident, connect(family, player).server().id());
+            }
+            assertEquals(1, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+            assertEquals(1, server(loadBalancer, resident).players());
+        }
+    }
+
+    @Test
+    public void unavailableResidencesAreReassigned() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+            MemoryServer resident = (MemoryServer) connect(family, player).server();
+            resident.leave(player);
+            family.removeServer(resident);
+
+            // connect() reports a failed request even when the fallback connected the player, so check where they ended up instead.
+            family.connect(player);
+            MemoryServer connected = player.connectedServer();
+            assertNotNull(connected);
+            assertNotEquals(resident.id(), connected.id());
+            assertEquals(connected.id(), residence(database, player));
+            assertEquals(1, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+            assertEquals(1, family.telemetry().fallbacks().get(StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE));
+        }
+    }
+
+    @Test
+    public void unavailableResidencesAreKeptWhenConnectingWithAnError() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+            MemoryServer resident = (MemoryServer) connect(family, player).server();
+            resident.leave(player);
+            family.removeServer(resident);
+
+            family.connect(player);
+            assertNotNull(player.connectedServer());
+            assertNotEquals(resident.id(), player.connectedServer().id());
+            assertEquals(1, player.messages().size());
+            assertEquals(resident.id(), residence(database, player));
+        }
+    }
+
+    @Test
+    public void unavailableResidencesCancelTheConnection() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(3);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.CANCEL_CONNECTION_ATTEMPT)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+            MemoryServer resident = (MemoryServer) connect(family, player).server();
+            resident.leave(player);
+            family.removeServer(resident);
+
+            assertFalse(connect(family, player).connected());
+            assertNull(player.connectedServer());
+            assertEquals(resident.id(), residence(database, player));
+        }
+    }
+
+    @Test
+    public void fallbacksSkipRefusingServers() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(4);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+            MemoryServer resident = (MemoryServer) connect(family, player).server();
+            resident.leave(player);
+            family.removeServer(resident);
+            for (var server : loadBalancer.servers())
+                if(!server.id().equals("server-3")) ((MemoryServer) server).refuseConnections();
+
+            family.connect(player);
+            assertEquals("server-3", player.connectedServer().id());
+            assertEquals("server-3", residence(database, player));
+        }
+    }
+
+    @Test
+    public void lockedFamiliesRefuseConnections() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        MemoryLoadBalancer loadBalancer = loadBalancer(2);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            loadBalancer.servers().forEach(family::lockServer);
+            MemoryPlayer player = new MemoryPlayer(new UUID(0, 1), "player-1");
+
+            assertFalse(connect(family, player).connected());
+            assertNull(player.connectedServer());
+            assertEquals(0, database.size(HazeResidenceStore.RESIDENCE_TABLE));
+        }
+    }
+
+    @Test
+    public void concurrentJoinsAssignOneResidencePerPlayer() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase("residences", new InjectedFaults(Duration.ofNanos(200_000), Duration.ofMillis(1), 0, SEED));
+        MemoryLoadBalancer loadBalancer = loadBalancer(20);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR)) {
+            ResidenceLoadGenerator generator = new ResidenceLoadGenerator(family, loadBalancer, 500, SEED);
+
+            ResidenceLoadGenerator.Report report = generator.run(6000, 32);
+            assertLatencies(report);
+            assertTrue(report.p50() >= Duration.ofNanos(200_000).toNanos(), "every join waits on at least one store call");
+
+            assertEquals(0, report.failures());
+            assertEquals(0, report.misroutes());
+            assertEquals(0, duplicates(database));
+            assertEquals(report.assigned(), database.size(HazeResidenceStore.RESIDENCE_TABLE));
+            assertEquals(report.joins(), report.assigned() + report.resident());
+        }
+    }
+
+    @Test
+    public void injectedFailuresNeverDuplicateResidences() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase("residences", new InjectedFaults(Duration.ZERO, Duration.ofMillis(1), 0.05, SEED));
+        MemoryLoadBalancer loadBalancer = loadBalancer(20);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.CONNECT_WITH_ERROR)) {
+            ResidenceLoadGenerator generator = new ResidenceLoadGenerator(family, loadBalancer, 500, SEED);
+
+            ResidenceLoadGenerator.Report report = generator.run(6000, 32);
+            assertLatencies(report);
+
+            assertTrue(report.failures() > 0);
+            assertEquals(0, report.misroutes());
+            assertEquals(0, duplicates(database));
+        }
+    }
+
+    @Test
+    public void everyUnavailableResidenceIsReassigned() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        MemoryLoadBalancer loadBalancer = loadBalancer(10);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            ResidenceLoadGenerator generator = new ResidenceLoadGenerator(family, loadBalancer, 1000, SEED);
+
+            assertEquals(1000, generator.joinEach().assigned());
+
+            for (int i = 0; i < 5; i++) family.removeServer(server(loadBalancer, "server-"+i));
+            ResidenceLoadGenerator.Report fallback = generator.joinEach();
+            assertLatencies(fallback);
+            assertEquals(500, fallback.fallbacks());
+            assertEquals(0, fallback.failures());
+
+            ResidenceLoadGenerator.Report rejoin = generator.joinEach();
+            assertEquals(1000, rejoin.resident());
+            assertEquals(0, rejoin.misroutes());
+            for (Residence residence : store.page(FAMILY, null, 0, Integer.MAX_VALUE))
+                assertTrue(loadBalancer.containsServer(residence.server_id()));
+            assertEquals(0, duplicates(database));
+        }
+    }
+
+    @Test
+    public void cancelledFallbacksKeepResidences() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        MemoryLoadBalancer loadBalancer = loadBalancer(4);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.CANCEL_CONNECTION_ATTEMPT)) {
+            ResidenceLoadGenerator generator = new ResidenceLoadGenerator(family, loadBalancer, 100, SEED);
+
+            generator.joinEach();
+            family.removeServer(server(loadBalancer, "server-0"));
+            ResidenceLoadGenerator.Report report = generator.joinEach();
+
+            assertEquals(25, report.fallbacks());
+            assertEquals(0, report.failures());
+            assertEquals(0, report.misroutes());
+            assertEquals(75, report.resident());
+            assertEquals(25, store.page(FAMILY, "server-0", 0, Integer.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void fallbacksSurviveRefusingServersUnderLoad() throws Exception {
+        MemoryHazeDatabase database = new MemoryHazeDatabase();
+        HazeResidenceStore store = new HazeResidenceStore(database);
+        // Other threads move the load balancer on too, so give each fallback plenty of attempts to get past the refusing servers.
+        MemoryLoadBalancer loadBalancer = loadBalancer(10, 20);
+        try (StaticFamily family = family(database, loadBalancer, StaticFamily.UnavailableProtocol.ASSIGN_NEW_RESIDENCE)) {
+            ResidenceLoadGenerator generator = new ResidenceLoadGenerator(family, loadBalancer, 1000, SEED);
+            generator.joinEach();
+
+            for (int i = 0; i < 5; i++) family.removeServer(server(loadBalancer, "server-"+i));
+            // Nobody lives on the refusing servers, so only fallbacks will try them.
+            for (int i = 10; i < 12; i++) {
+                MemoryServer server = new MemoryServer("server-"+i, 25565 + i);
+                server.refuseConnections();
+                family.addServer(server);
+            }
+
+            ResidenceLoadGenerator.Report report = generator.run(8000, 32);
+            assertTrue(report.fallbacks() > 0);
+            assertEquals(0, report.failures());
+            assertEquals(0, report.misroutes());
+            assertEquals(0, duplicates(database));
+
+            ResidenceLoadGenerator.Report sweep = generator.joinEach();
+            assertEquals(0, sweep.failures());
+            assertEquals(0, sweep.misroutes());
+            assertEquals(1000, sweep.resident() + sweep.fallbacks());
+            for (Residence residence : store.page(FAMILY, null, 0, Integer.MAX_VALUE))
+                assertTrue(loadBalancer.containsServer(residence.server_id()), residence.server_id());
+        }
+    }
+}